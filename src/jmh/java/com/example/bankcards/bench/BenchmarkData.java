@@ -0,0 +1,42 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardMapper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static List<Card> cards(CardEncryptor encryptor, int count) {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("user1");
+        owner.setRole(User.Role.USER);
+        CardStatus active = new CardStatus();
+        active.setId(1L);
+        active.setName("ACTIVE");
+
+        List<Card> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String number = String.format("4000%012d", i);
+            Card card = new Card();
+            card.setId((long) i + 1);
+            card.setNumber(encryptor.encrypt(number));
+            card.setNumberLast4(CardMapper.lastFour(number));
+            card.setOwner(owner);
+            card.setStatus(active);
+            card.setExpiration(new Date());
+            card.setBalance(1000L);
+            cards.add(card);
+        }
+        return cards;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.repository.CardBalanceBatchRepository.BalanceChange;
+import com.example.bankcards.repository.CardBalanceBatchRepositoryImpl;
+import com.example.bankcards.repository.CardBalanceSlotRepositoryImpl;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность зачислений на одну карту из 8 потоков: slots=0 — все транзакции обновляют
+ * строку cards, slots=K — случайный из K слотов. Транзакция после зачисления ещё вставляет запись
+ * о переводе, поэтому блокировка строки держится до коммита, как в CardService. holdMs добавляет
+ * к транзакции задержку — сетевые round-trip и коммит настоящей БД, которых у встроенной H2 нет.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CardBalanceSlotsBenchmark {
+
+    private static final long CARD_ID = 1L;
+    private static final long OWNER_ID = 1L;
+    private static final long STATUS_ID = 1L;
+
+    @Param({"0", "16"})
+    private int slots;
+
+    @Param({"0", "1"})
+    private int holdMs;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private CardBalanceBatchRepositoryImpl cardRows;
+    private CardBalanceSlotRepositoryImpl cardSlots;
+
+    @Setup
+    public void setup() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:slots-bench-" + slots + "-" + holdMs + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;LOCK_TIMEOUT=10000");
+        dataSource.setMaximumPoolSize(8);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        cardRows = new CardBalanceBatchRepositoryImpl(jdbcTemplate);
+        cardSlots = new CardBalanceSlotRepositoryImpl(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE TABLE cards (id BIGINT PRIMARY KEY, owner_id BIGINT NOT NULL, " +
+                "status_id BIGINT NOT NULL, balance BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE card_balance_slots (card_id BIGINT NOT NULL, slot INT NOT NULL, " +
+                "balance BIGINT NOT NULL, PRIMARY KEY (card_id, slot))");
+        jdbcTemplate.execute("CREATE TABLE transfers (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "to_card_id BIGINT NOT NULL, amount BIGINT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO cards (id, owner_id, status_id, balance) VALUES (?, ?, ?, 0)",
+                CARD_ID, OWNER_ID, STATUS_ID);
+        cardSlots.createSlots(CARD_ID, 0, slots);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Integer credit() {
+        return transactionTemplate.execute(status -> {
+            int credited = slots == 0
+                    ? cardRows.creditAll(OWNER_ID, STATUS_ID, List.of(new BalanceChange(CARD_ID, 1L)))[0]
+                    : cardSlots.creditSlot(CARD_ID, ThreadLocalRandom.current().nextInt(slots), OWNER_ID, STATUS_ID, 1L);
+            jdbcTemplate.update("INSERT INTO transfers (to_card_id, amount) VALUES (?, 1)", CARD_ID);
+            if (holdMs > 0) {
+                hold();
+            }
+            return credited;
+        });
+    }
+
+    private void hold() {
+        try {
+            Thread.sleep(holdMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.util.CardEncryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardEncryptorBenchmark {
+
+    private CardEncryptor encryptor;
+    private String number;
+    private String encrypted;
+
+    @Setup
+    public void setup() {
+        encryptor = new CardEncryptor("1234567890ABCDEF");
+        number = "1234567812345678";
+        encrypted = encryptor.encrypt(number);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptor.encrypt(number);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptor.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String maskCardNumber() {
+        return encryptor.maskCardNumber(encrypted);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.EmTestApplication;
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardImportResponse;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardImportService;
+import com.example.bankcards.service.CardService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Строк в секунду при выпуске карт: importCsv — POST /admin/import/cards (параллельное шифрование,
+ * JDBC batch по chunkSize строк), createCard — прежний путь, по CardService.createCard на карту.
+ * Приложение поднимается целиком на H2, без веб-сервера.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardImportBenchmark {
+
+    private static final int ROWS = 2_000;
+
+    @Param({"50", "500"})
+    private int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private CardImportService cardImportService;
+    private CardService cardService;
+    private Long ownerId;
+    private long nextNumber;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(EmTestApplication.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:import-bench-" + chunkSize
+                        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--card.import.chunk-size=" + chunkSize,
+                "--logging.level.com.example.bankcards=WARN");
+        cardImportService = context.getBean(CardImportService.class);
+        cardService = context.getBean(CardService.class);
+
+        User owner = new User();
+        owner.setUsername("import-bench");
+        owner.setPassword("hash");
+        owner.setRole(User.Role.USER);
+        ownerId = context.getBean(UserRepository.class).save(owner).getId();
+        nextNumber = 4_000_000_000_000_000L;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public CardImportResponse importCsv() throws IOException {
+        StringBuilder csv = new StringBuilder(ROWS * 40).append(CardImportService.CSV_HEADER).append('\n');
+        for (int i = 0; i < ROWS; i++) {
+            csv.append(nextNumber++).append(',').append(ownerId).append(",2030-01-31,0\n");
+        }
+        return cardImportService.importCards(CardImportService.Format.CSV,
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long createCard() {
+        long last = 0;
+        for (int i = 0; i < ROWS; i++) {
+            CardDTO dto = new CardDTO();
+            dto.setNumber(Long.toString(nextNumber++));
+            dto.setOwnerId(ownerId);
+            dto.setExpiration(Date.valueOf("2030-01-31"));
+            dto.setBalance(0L);
+            last = cardService.createCard(dto).getId();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Маппинг страницы из 100 карт: маска из сохранённых последних 4 цифр против расшифровки номера.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardMapperBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private CardEncryptor encryptor;
+    private List<Card> page;
+
+    @Setup
+    public void setup() {
+        encryptor = new CardEncryptor("1234567890ABCDEF");
+        page = BenchmarkData.cards(encryptor, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public CardResponse toResponse() {
+        return CardMapper.toResponse(page.get(0));
+    }
+
+    @Benchmark
+    public void toResponsePage(Blackhole bh) {
+        for (Card card : page) {
+            bh.consume(CardMapper.toResponse(card));
+        }
+    }
+
+    @Benchmark
+    public void toResponsePageDecrypting(Blackhole bh) {
+        for (Card card : page) {
+            bh.consume(CardMapper.toResponse(card, encryptor.maskCardNumber(card.getNumber())));
+        }
+    }
+}
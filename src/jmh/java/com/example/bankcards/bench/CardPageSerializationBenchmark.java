@@ -0,0 +1,45 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardPageSerializationBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Page<CardResponse> page;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        CardEncryptor encryptor = new CardEncryptor("1234567890ABCDEF");
+        List<CardResponse> content = BenchmarkData.cards(encryptor, pageSize).stream()
+                .map(CardMapper::toResponse)
+                .toList();
+        page = new PageImpl<>(content, PageRequest.of(0, pageSize), 10_000L);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.bankcards.bench;
+
+import com.example.bankcards.EmTestApplication;
+import com.example.bankcards.dto.AuthResponse;
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.RegisterRequest;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.UserService;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Нагрузочный сценарий: одно и то же приложение на пуле платформенных потоков Tomcat и на виртуальных
+ * потоках (профиль virtual). Приложение поднимается в этом же JVM, клиенты — виртуальные потоки
+ * с HttpClient, смесь запросов: GET /card/scroll и POST /card/transfer между картами клиента.
+ * Для каждого режима печатаются пропускная способность, p50/p99 и число 429. В режиме virtual
+ * JFR-поток собирает события jdk.VirtualThreadPinned и печатает, где виртуальные потоки
+ * блокировались внутри synchronized.
+ * <p>
+ * Параметры (key=value): clients, users, duration и warmup (секунды), transfer-share (0..1),
+ * jdbc-url / jdbc-user / jdbc-password — PostgreSQL вместо встроенной H2.
+ */
+public final class VirtualThreadsLoadScenario {
+
+    private record Mode(String name, String profile) {}
+
+    private record Sample(String operation, int status, long nanos) {}
+
+    private record Client(String token, long firstCardId, long secondCardId) {}
+
+    private record Result(String mode, long requests, long tooManyRequests, long errors, double seconds,
+                          Map<String, long[]> latencies, Map<String, Long> pinned) {}
+
+    private VirtualThreadsLoadScenario() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Arrays.stream(args)
+                .map(arg -> arg.split("=", 2))
+                .collect(Collectors.toMap(kv -> kv[0], kv -> kv.length > 1 ? kv[1] : ""));
+
+        List<Result> results = new ArrayList<>();
+        for (Mode mode : List.of(new Mode("platform", "default"), new Mode("virtual", "virtual"))) {
+            results.add(run(mode, options));
+        }
+
+        System.out.printf("%n%-9s %10s %10s %8s %8s %10s %10s %10s%n",
+                "mode", "req/s", "requests", "429", "errors", "p50 ms", "p99 ms", "max ms");
+        for (Result result : results) {
+            long[] all = result.latencies().get("all");
+            System.out.printf("%-9s %10.0f %10d %8d %8d %10.1f %10.1f %10.1f%n", result.mode(),
+                    result.requests() / result.seconds(), result.requests(), result.tooManyRequests(), result.errors(),
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 1.0));
+            result.latencies().forEach((operation, latencies) -> {
+                if (!operation.equals("all")) {
+                    System.out.printf("  %-18s p50 %8.1f ms  p99 %8.1f ms%n", operation,
+                            percentile(latencies, 0.50), percentile(latencies, 0.99));
+                }
+            });
+        }
+        Result virtual = results.get(results.size() - 1);
+        System.out.printf("%nVirtual thread pinning (jdk.VirtualThreadPinned), top frames:%n");
+        if (virtual.pinned().isEmpty()) {
+            System.out.println("  none");
+        }
+        virtual.pinned().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(10)
+                .forEach(e -> System.out.printf("  %6d  %s%n", e.getValue(), e.getKey()));
+    }
+
+    private static Result run(Mode mode, Map<String, String> options) throws Exception {
+        int clients = Integer.parseInt(options.getOrDefault("clients", "400"));
+        int users = Integer.parseInt(options.getOrDefault("users", "50"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        double transferShare = Double.parseDouble(options.getOrDefault("transfer-share", "0.2"));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", options.getOrDefault("jdbc-url", "jdbc:h2:mem:load-" + mode.name() +
+                ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;LOCK_TIMEOUT=10000"));
+        properties.put("spring.datasource.username", options.getOrDefault("jdbc-user", "sa"));
+        properties.put("spring.datasource.password", options.getOrDefault("jdbc-password", ""));
+        properties.put("spring.datasource.driver-class-name",
+                options.containsKey("jdbc-url") ? "org.postgresql.Driver" : "org.h2.Driver");
+
+        System.out.printf("== %s: %d clients, %d users, %ds warmup + %ds%n",
+                mode.name(), clients, users, warmupSeconds, durationSeconds);
+        // Аргументами командной строки, чтобы перекрыть application.yml
+        String[] appArgs = properties.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(EmTestApplication.class)
+                .profiles(mode.profile())
+                .run(appArgs)) {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            List<Client> seeded = seed(context, mode.name(), users);
+
+            Map<String, Long> pinned = new ConcurrentHashMap<>();
+            RecordingStream recording = null;
+            if (mode.profile().equals("virtual")) {
+                recording = new RecordingStream();
+                recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+                recording.onEvent("jdk.VirtualThreadPinned", event -> pinned.merge(topFrames(event), 1L, Long::sum));
+                recording.startAsync();
+            }
+            try {
+                load(baseUrl, seeded, clients, transferShare, warmupSeconds, null);
+                List<Sample> samples = new ArrayList<>();
+                long started = System.nanoTime();
+                load(baseUrl, seeded, clients, transferShare, durationSeconds, samples);
+                double seconds = (System.nanoTime() - started) / 1e9;
+                return summarize(mode.name(), samples, seconds, pinned);
+            } finally {
+                if (recording != null) {
+                    recording.close();
+                }
+            }
+        }
+    }
+
+    private static List<Client> seed(ConfigurableApplicationContext context, String prefix, int users) {
+        UserService userService = context.getBean(UserService.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        CardService cardService = context.getBean(CardService.class);
+        Date expiration = new Date(System.currentTimeMillis() + 365L * 86_400_000L);
+
+        List<Client> clients = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            RegisterRequest request = new RegisterRequest();
+            request.setUsername("load-" + prefix + "-" + u);
+            request.setPassword("password");
+            request.setRole(User.Role.USER);
+            AuthResponse auth = userService.register(request);
+            Long ownerId = userRepository.findByUsername(request.getUsername()).orElseThrow().getId();
+
+            long[] cardIds = new long[2];
+            for (int c = 0; c < 2; c++) {
+                CardDTO card = new CardDTO();
+                card.setNumber(String.format("9%05d%010d", u, c));
+                card.setOwnerId(ownerId);
+                card.setExpiration(expiration);
+                card.setBalance(1_000_000L);
+                cardIds[c] = cardService.createCard(card).getId();
+            }
+            clients.add(new Client(auth.getAccessToken(), cardIds[0], cardIds[1]));
+        }
+        return clients;
+    }
+
+    // samples == null — прогрев без записи замеров
+    private static void load(String baseUrl, List<Client> seeded, int clients, double transferShare,
+                             int seconds, List<Sample> samples) throws Exception {
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<Sample>>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client client = seeded.get(i % seeded.size());
+                futures.add(executor.submit(() -> drive(http, baseUrl, client, transferShare, deadline)));
+            }
+            for (Future<List<Sample>> future : futures) {
+                List<Sample> clientSamples = future.get();
+                if (samples != null) {
+                    samples.addAll(clientSamples);
+                }
+            }
+        }
+    }
+
+    private static List<Sample> drive(HttpClient http, String baseUrl, Client client, double transferShare,
+                                      long deadline) {
+        List<Sample> samples = new ArrayList<>();
+        boolean forward = true;
+        while (System.nanoTime() < deadline) {
+            boolean transfer = ThreadLocalRandom.current().nextDouble() < transferShare;
+            HttpRequest request;
+            if (transfer) {
+                // Туда и обратно по очереди, чтобы балансы не заканчивались
+                long from = forward ? client.firstCardId() : client.secondCardId();
+                long to = forward ? client.secondCardId() : client.firstCardId();
+                forward = !forward;
+                request = HttpRequest.newBuilder(URI.create(baseUrl + "/card/transfer"))
+                        .header("Authorization", "Bearer " + client.token())
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"fromCardId\":" + from + ",\"toCardId\":" + to + ",\"amount\":1}"))
+                        .build();
+            } else {
+                request = HttpRequest.newBuilder(URI.create(baseUrl + "/card/scroll?size=20"))
+                        .header("Authorization", "Bearer " + client.token())
+                        .GET()
+                        .build();
+            }
+            long started = System.nanoTime();
+            int status;
+            try {
+                status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (Exception e) {
+                status = -1;
+            }
+            samples.add(new Sample(transfer ? "POST /card/transfer" : "GET /card/scroll", status,
+                    System.nanoTime() - started));
+        }
+        return samples;
+    }
+
+    private static Result summarize(String mode, List<Sample> samples, double seconds, Map<String, Long> pinned) {
+        long tooManyRequests = samples.stream().filter(s -> s.status() == 429).count();
+        long errors = samples.stream().filter(s -> s.status() != 200 && s.status() != 429).count();
+        Map<String, long[]> latencies = new HashMap<>();
+        latencies.put("all", sorted(samples));
+        samples.stream()
+                .collect(Collectors.groupingBy(Sample::operation))
+                .forEach((operation, group) -> latencies.put(operation, sorted(group)));
+        return new Result(mode, samples.size(), tooManyRequests, errors, seconds, latencies, Map.copyOf(pinned));
+    }
+
+    private static long[] sorted(List<Sample> samples) {
+        long[] nanos = samples.stream().mapToLong(Sample::nanos).toArray();
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static String topFrames(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<no stack trace>";
+        }
+        // Верх стека — механика парковки в JDK, интересен первый кадр библиотеки или приложения
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        int first = 0;
+        while (first < frames.size() - 1 && isJdkFrame(frames.get(first))) {
+            first++;
+        }
+        return frames.stream()
+                .skip(first)
+                .limit(3)
+                .map(VirtualThreadsLoadScenario::frame)
+                .collect(Collectors.joining(" <- "));
+    }
+
+    private static boolean isJdkFrame(RecordedFrame frame) {
+        String type = frame.getMethod().getType().getName();
+        return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.");
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.exception.TooManyRequestsException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DataSource, который ограничивает число одновременно выданных соединений семафором.
+ * На виртуальных потоках к пулу может прийти сколько угодно запросов сразу: вместо очереди
+ * в пуле и таймаута через connection-timeout лишние ждут разрешения не дольше acquireTimeoutMs
+ * и получают TooManyRequestsException (429). Разрешение возвращается при закрытии соединения.
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+
+    public record LimiterStats(int permits, int available, int waiting, long rejected) {}
+
+    private final int permits;
+    private final Semaphore semaphore;
+    private final long acquireTimeoutMs;
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimitedDataSource(DataSource target, int permits, long acquireTimeoutMs) {
+        super(target);
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return limited(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return limited(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    public LimiterStats stats() {
+        return new LimiterStats(permits, semaphore.availablePermits(), semaphore.getQueueLength(), rejected.sum());
+    }
+
+    private void acquire() {
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new TooManyRequestsException("Database is busy, please retry");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TooManyRequestsException("Interrupted while waiting for a database connection");
+        }
+    }
+
+    private Connection limited(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConcurrencyLimitedDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        // Повторный close не возвращает разрешение второй раз
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            semaphore.release();
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает основной DataSource в {@link ConcurrencyLimitedDataSource} (db.limiter.enabled=true).
+ * Обёртка ставится после настройки пула, поэтому spring.datasource.hikari.* применяются как обычно.
+ */
+@Configuration
+@ConditionalOnProperty(name = "db.limiter.enabled", havingValue = "true")
+public class DbLimiterConfig {
+
+    @Bean
+    public static BeanPostProcessor dbConcurrencyLimiter(@Value("${db.limiter.permits:10}") int permits,
+                                                         @Value("${db.limiter.acquire-timeout-ms:1000}") long acquireTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && beanName.equals("dataSource")) {
+                    return new ConcurrencyLimitedDataSource(dataSource, permits, acquireTimeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+}
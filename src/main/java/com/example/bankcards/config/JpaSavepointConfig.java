@@ -0,0 +1,89 @@
+package com.example.bankcards.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Точки сохранения (PROPAGATION_NESTED) для JpaTransactionManager. HibernateJpaDialect их не поддерживает,
+ * а групповая транзакция шарда переводов откатывает отказавший перевод именно до точки сохранения.
+ * Диалект подменяется после инициализации менеджера: afterPropertiesSet берёт диалект из EntityManagerFactory.
+ */
+@Configuration
+public class JpaSavepointConfig {
+
+    @Bean
+    public static BeanPostProcessor jpaSavepointDialect() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof JpaTransactionManager transactionManager) {
+                    transactionManager.setJpaDialect(new SavepointHibernateJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+
+    static class SavepointHibernateJpaDialect extends HibernateJpaDialect {
+
+        @Override
+        public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+                throws PersistenceException, SQLException {
+            return new SavepointTransactionData(super.beginTransaction(entityManager, definition),
+                    entityManager.unwrap(Session.class));
+        }
+
+        @Override
+        public void cleanupTransaction(Object transactionData) {
+            super.cleanupTransaction(transactionData instanceof SavepointTransactionData data ? data.delegate() : transactionData);
+        }
+    }
+
+    private record SavepointTransactionData(Object delegate, Session session) implements SavepointManager {
+
+        @Override
+        public Object createSavepoint() {
+            try {
+                // Изменения до точки сохранения должны попасть в базу раньше неё, иначе откат заберёт и их
+                session.flush();
+                return session.doReturningWork(Connection::setSavepoint);
+            } catch (HibernateException e) {
+                throw new TransactionSystemException("Could not create JDBC savepoint", e);
+            }
+        }
+
+        @Override
+        public void rollbackToSavepoint(Object savepoint) {
+            try {
+                session.doWork(connection -> connection.rollback((Savepoint) savepoint));
+                // Сущности откаченного шага не должны уйти в базу при коммите
+                session.clear();
+            } catch (HibernateException e) {
+                throw new TransactionSystemException("Could not roll back to JDBC savepoint", e);
+            }
+        }
+
+        @Override
+        public void releaseSavepoint(Object savepoint) {
+            try {
+                session.doWork(connection -> connection.releaseSavepoint((Savepoint) savepoint));
+            } catch (HibernateException e) {
+                throw new TransactionSystemException("Could not release JDBC savepoint", e);
+            }
+        }
+    }
+}
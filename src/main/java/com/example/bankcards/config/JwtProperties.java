@@ -9,6 +9,8 @@ public class JwtProperties {
     private String secret;
     private long accessExpirationMs;
     private long refreshExpirationMs;
+    private int verifiedCacheSize = 10_000;
+    private boolean statelessAuth;
 
     public String getSecret() {
         return secret;
@@ -33,4 +35,20 @@ public class JwtProperties {
     public void setRefreshExpirationMs(long refreshExpirationMs) {
         this.refreshExpirationMs = refreshExpirationMs;
     }
+
+    public int getVerifiedCacheSize() {
+        return verifiedCacheSize;
+    }
+
+    public void setVerifiedCacheSize(int verifiedCacheSize) {
+        this.verifiedCacheSize = verifiedCacheSize;
+    }
+
+    public boolean isStatelessAuth() {
+        return statelessAuth;
+    }
+
+    public void setStatelessAuth(boolean statelessAuth) {
+        this.statelessAuth = statelessAuth;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.security.UserCache;
+import com.example.bankcards.service.CardExpirySweeper;
+import com.example.bankcards.service.TransferShardExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Публикует в Micrometer счётчики, которые компоненты уже ведут сами (stats()/status()).
+ * Значения снимаются только при чтении /actuator/prometheus, на горячем пути ничего не добавляется.
+ * Пулы Hikari (основной и реплики) регистрирует Spring Boot и {@link ReplicaRoutingConfig}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder userCacheMetrics(UserCache userCache) {
+        return registry -> {
+            FunctionCounter.builder("user.cache.requests", userCache, c -> c.stats().hitCount())
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("user.cache.requests", userCache, c -> c.stats().missCount())
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("user.cache.evictions", userCache, c -> c.stats().evictionCount())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder transferShardMetrics(TransferShardExecutor executor) {
+        return registry -> {
+            // Число шардов фиксируется при старте; при выключенном шардировании список пуст
+            int shards = executor.stats().size();
+            for (int i = 0; i < shards; i++) {
+                int shard = i;
+                String tag = String.valueOf(i);
+                Gauge.builder("transfer.shard.queue", executor, e -> e.stats().get(shard).queueDepth())
+                        .tag("shard", tag).register(registry);
+                FunctionCounter.builder("transfer.shard.completed", executor, e -> e.stats().get(shard).completed())
+                        .tag("shard", tag).register(registry);
+                FunctionCounter.builder("transfer.shard.rejected", executor, e -> e.stats().get(shard).rejected())
+                        .tag("shard", tag).register(registry);
+                FunctionCounter.builder("transfer.shard.fallbacks", executor, e -> e.stats().get(shard).fallbacks())
+                        .tag("shard", tag).register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder dbLimiterMetrics(DataSource dataSource) {
+        return registry -> {
+            if (!(dataSource instanceof ConcurrencyLimitedDataSource limiter)) {
+                return;
+            }
+            Gauge.builder("db.limiter.permits", limiter, l -> l.stats().permits()).register(registry);
+            Gauge.builder("db.limiter.available", limiter, l -> l.stats().available()).register(registry);
+            Gauge.builder("db.limiter.waiting", limiter, l -> l.stats().waiting()).register(registry);
+            FunctionCounter.builder("db.limiter.rejected", limiter, l -> l.stats().rejected()).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder replicaMetrics(ObjectProvider<ReplicaRoutingDataSource> replicaRouting) {
+        return registry -> replicaRouting.ifAvailable(routing -> {
+            List<ReplicaRoutingDataSource.ReplicaStatus> replicas = routing.status();
+            for (int i = 0; i < replicas.size(); i++) {
+                int index = i;
+                String name = replicas.get(i).name();
+                Gauge.builder("db.replica.healthy", routing, r -> r.status().get(index).healthy() ? 1 : 0)
+                        .tag("replica", name).register(registry);
+                // Отставание ещё не измерено (-1) публикуется как NaN
+                Gauge.builder("db.replica.lag", routing, r -> {
+                            long lagMs = r.status().get(index).lagMs();
+                            return lagMs < 0 ? Double.NaN : lagMs / 1000.0;
+                        })
+                        .tag("replica", name).baseUnit("seconds").register(registry);
+            }
+        });
+    }
+
+    @Bean
+    public MeterBinder cardExpirySweeperMetrics(CardExpirySweeper sweeper) {
+        return registry -> {
+            Gauge.builder("card.expiry.sweep.running", sweeper, s -> s.stats().running() ? 1 : 0).register(registry);
+            FunctionCounter.builder("card.expiry.sweep.runs", sweeper, s -> s.stats().runs()).register(registry);
+            FunctionCounter.builder("card.expiry.sweep.skipped", sweeper, s -> s.stats().skipped()).register(registry);
+            FunctionCounter.builder("card.expiry.sweep.expired", sweeper, s -> s.stats().totalExpired()).register(registry);
+            Gauge.builder("card.expiry.sweep.last.duration", sweeper, s -> s.stats().lastRunDurationMs() / 1000.0)
+                    .baseUnit("seconds").register(registry);
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение с реплик (replicas.enabled=true). spring.datasource.* остаётся primary, реплики
+ * перечисляются в replicas.instances. Бин "dataSource" — ленивый прокси над маршрутизатором,
+ * поэтому его по-прежнему видят JPA, JdbcTemplate и ограничитель db.limiter.
+ */
+@Configuration
+@ConditionalOnProperty(name = "replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties properties,
+                                                             ReplicaProperties replicaProperties,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        List<ReplicaProperties.Instance> instances = replicaProperties.getInstances();
+        if (instances.isEmpty()) {
+            throw new IllegalStateException("replicas.enabled=true requires at least one replicas.instances entry");
+        }
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < instances.size(); i++) {
+            ReplicaProperties.Instance instance = instances.get(i);
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.getDriverClassName())
+                    .url(instance.getUrl())
+                    .username(instance.getUsername() != null ? instance.getUsername() : properties.getUsername())
+                    .password(instance.getPassword() != null ? instance.getPassword() : properties.getPassword())
+                    .build();
+            replica.setPoolName("replica-" + i);
+            replica.setMaximumPoolSize(replicaProperties.getPoolSize());
+            // Недоступная реплика не должна держать запрос дольше, чем проверка успеет её исключить
+            replica.setConnectionTimeout(replicaProperties.getConnectionTimeoutMs());
+            replica.setReadOnly(true);
+            // Пулы реплик не бины, поэтому метрики hikaricp_* для них Spring Boot сам не включит.
+            // setMetricRegistry ищет конструктор фабрики по точному классу реестра — передаём фабрику сами
+            meterRegistry.ifAvailable(registry ->
+                    replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            replicas.put("replica-" + i, replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas,
+                replicaProperties.getMaxLagMs(), replicaProperties.getLagQuery());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        // Соединение берётся при первой команде, когда read-only флаг транзакции уже выставлен
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
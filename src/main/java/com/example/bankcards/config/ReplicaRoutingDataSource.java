@@ -0,0 +1,135 @@
+package com.example.bankcards.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отправляет read-only транзакции на реплики по кругу, остальное — на primary.
+ * Реплика участвует, только если последняя проверка прошла и отставание не больше maxLagMs;
+ * если подходящих реплик нет, чтение идёт на primary. Ключ выбирается при получении соединения,
+ * поэтому источник нужно оборачивать в LazyConnectionDataSourceProxy — иначе JpaTransactionManager
+ * берёт соединение раньше, чем выставлен read-only флаг транзакции.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    public record ReplicaStatus(String name, boolean healthy, long lagMs) {}
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy;
+        private volatile long lagMs = -1;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMs, String lagQuery) {
+        this.replicas = replicas.entrySet().stream().map(e -> new Replica(e.getKey(), e.getValue())).toList();
+        this.maxLagMs = maxLagMs;
+        this.lagQuery = lagQuery;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        // До первой проверки реплики не используются — проверяем сразу, а не через интервал
+        checkReplicas();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (isAvailable(replica)) {
+                return replica.name;
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Scheduled(fixedDelayString = "${replicas.health-check-interval-ms:1000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean wasAvailable = isAvailable(replica);
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(lagQuery)) {
+                // null — реплика ещё ничего не применяла или это не standby: считаем, что отставания нет
+                long lag = rs.next() ? rs.getLong(1) : 0;
+                replica.lagMs = Math.max(lag, 0);
+                replica.healthy = true;
+            } catch (SQLException | RuntimeException e) {
+                replica.healthy = false;
+                if (wasAvailable) {
+                    logger.warn("Replica {} failed health check: {}", replica.name, e.getMessage());
+                }
+            }
+            boolean available = isAvailable(replica);
+            if (available && !wasAvailable) {
+                logger.info("Replica {} is back in rotation, lag {} ms", replica.name, replica.lagMs);
+            } else if (!available && wasAvailable && replica.healthy) {
+                logger.warn("Replica {} lags by {} ms (max {} ms), reads fall back to primary",
+                        replica.name, replica.lagMs, maxLagMs);
+            }
+        }
+    }
+
+    /**
+     * Уйдёт ли сейчас read-only транзакция на реплику; false — все чтения идут на primary.
+     */
+    public boolean routesToReplicas() {
+        return replicas.stream().anyMatch(this::isAvailable);
+    }
+
+    public List<ReplicaStatus> status() {
+        return replicas.stream().map(r -> new ReplicaStatus(r.name, r.healthy, r.lagMs)).toList();
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private boolean isAvailable(Replica replica) {
+        return replica.healthy && replica.lagMs <= maxLagMs;
+    }
+}
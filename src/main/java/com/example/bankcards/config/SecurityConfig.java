@@ -1,20 +1,31 @@
 package com.example.bankcards.config;
 
 import com.example.bankcards.security.JwtAuthFilter;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity(prePostEnabled = true)
@@ -32,6 +43,34 @@ public class SecurityConfig {
             "/swagger-ui.html"
     };
 
+    /**
+     * /actuator/**: health открыт, остальное (prometheus) — роль ADMIN по JWT или METRICS по HTTP Basic.
+     * Basic включается, только если задан metrics.scrape.password. Пароль сравнивается напрямую,
+     * без BCrypt: скрейп каждые 10 секунд не должен стоить хэширования на каждый запрос.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorFilterChain(HttpSecurity http,
+                                                   @Value("${metrics.scrape.username:prometheus}") String scrapeUsername,
+                                                   @Value("${metrics.scrape.password:}") String scrapePassword) throws Exception {
+        http
+                .securityMatcher("/actuator/**")
+                .csrf(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(auth ->
+                        auth
+                                .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                                .anyRequest().hasAnyRole("ADMIN", "METRICS")
+                )
+                .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+        if (!scrapePassword.isEmpty()) {
+            http
+                    .httpBasic(Customizer.withDefaults())
+                    .authenticationManager(scrapeAuthenticationManager(scrapeUsername, scrapePassword));
+        }
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
@@ -40,6 +79,8 @@ public class SecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth ->
                         auth
+                                // Повторный async-диспатч StreamingResponseBody: доступ уже проверен в исходном запросе
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                                 .requestMatchers("/user/**").permitAll()
                                 .requestMatchers(PUBLIC_URLS).permitAll()
                                 .anyRequest().authenticated()
@@ -56,6 +97,18 @@ public class SecurityConfig {
         return config.getAuthenticationManager();
     }
 
+    private static AuthenticationManager scrapeAuthenticationManager(String username, String password) {
+        byte[] expected = (username + ":" + password).getBytes(StandardCharsets.UTF_8);
+        return authentication -> {
+            byte[] actual = (authentication.getName() + ":" + authentication.getCredentials()).getBytes(StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                throw new BadCredentialsException("Bad credentials");
+            }
+            return UsernamePasswordAuthenticationToken.authenticated(username, null,
+                    List.of(new SimpleGrantedAuthority("ROLE_METRICS")));
+        };
+    }
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
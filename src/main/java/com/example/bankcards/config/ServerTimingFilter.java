@@ -0,0 +1,73 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.util.RequestTimings;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Измеряет фазы запроса ({@link RequestTimings}) и отдаёт их в заголовке Server-Timing.
+ * Тело ответа буферизуется, чтобы заголовок успел уйти уже после сериализации JSON, поэтому
+ * фильтр ставится только на JSON-эндпоинты, не на потоковые выгрузки. Доля запросов
+ * logSampleRate дополнительно пишется в лог строкой key=value.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+    static final String HEADER = "Server-Timing";
+
+    private final double logSampleRate;
+
+    public ServerTimingFilter(double logSampleRate) {
+        this.logSampleRate = logSampleRate;
+        RequestTimings.enable();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.begin();
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, cachingResponse);
+        } finally {
+            long total = System.nanoTime() - start;
+            RequestTimings.end();
+            cachingResponse.setHeader(HEADER, timings.toServerTiming(total));
+            if (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+                logTimings(request, cachingResponse.getStatus(), timings, total);
+            }
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    private static void logTimings(HttpServletRequest request, int status, RequestTimings timings, long total) {
+        StringBuilder line = new StringBuilder(192)
+                .append("request_timing method=").append(request.getMethod())
+                .append(" path=").append(request.getRequestURI())
+                .append(" status=").append(status)
+                .append(" total_ms=").append(millis(total));
+        for (RequestTimings.Phase phase : RequestTimings.Phase.values()) {
+            line.append(' ').append(phase.metric()).append("_ms=").append(millis(timings.nanos(phase)))
+                    .append(' ').append(phase.metric()).append("_calls=").append(timings.calls(phase));
+        }
+        logger.info(line.toString());
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+}
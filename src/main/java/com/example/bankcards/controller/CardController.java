@@ -1,9 +1,15 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardLookupRequest;
+import com.example.bankcards.dto.TransferBatchRequest;
 import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferHistoryResponse;
+import com.example.bankcards.dto.TransferResult;
 import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardSliceResponse;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.service.CardService;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
@@ -16,6 +22,7 @@ import org.springframework.web.bind.annotation.*;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 import java.security.Principal;
+import java.util.List;
 
 @RestController
 @RequestMapping("/card")
@@ -40,7 +47,7 @@ public class CardController {
     public ResponseEntity<Page<CardResponse>> read(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(required = false) String status,
+            @RequestParam(required = false) CardStatus.Code status,
             @RequestParam(required = false) String owner,
             Principal principal) {
         Pageable pageable = PageRequest.of(page, size);
@@ -48,6 +55,18 @@ public class CardController {
         return ResponseEntity.ok(cards);
     }
 
+    @GetMapping("/scroll")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<CardSliceResponse> scroll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) CardStatus.Code status,
+            @RequestParam(required = false) String owner,
+            Principal principal) {
+        CardSliceResponse cards = cardService.scrollCards(status, owner, cursor, size, principal.getName());
+        return ResponseEntity.ok(cards);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
     public ResponseEntity<CardResponse> getById(@PathVariable Long id, Principal principal) {
@@ -55,6 +74,24 @@ public class CardController {
         return ResponseEntity.ok(card);
     }
 
+    @GetMapping("/{id}/transfers")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<TransferHistoryResponse> transfers(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            Principal principal) {
+        TransferHistoryResponse history = cardService.getTransferHistory(id, cursor, size, principal.getName());
+        return ResponseEntity.ok(history);
+    }
+
+    @PostMapping("/lookup")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CardResponse> findByNumber(@Valid @RequestBody CardLookupRequest request) {
+        CardResponse card = cardService.findCardByNumber(request.getNumber());
+        return ResponseEntity.ok(card);
+    }
+
     @PatchMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<CardResponse> update(@PathVariable Long id, @Valid @RequestBody CardDTO cardDTO) {
@@ -71,11 +108,21 @@ public class CardController {
 
     @PostMapping("/transfer")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Void> transfer(@Valid @RequestBody TransferDTO transferDTO, Principal principal) {
-        cardService.transfer(transferDTO, principal.getName());
+    public ResponseEntity<Void> transfer(@Valid @RequestBody TransferDTO transferDTO,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                         Principal principal) {
+        cardService.transfer(transferDTO, principal.getName(), idempotencyKey);
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/transfer/batch")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<List<TransferResult>> transferBatch(@Valid @RequestBody TransferBatchRequest request,
+                                                              Principal principal) {
+        List<TransferResult> results = cardService.transferBatch(request.getTransfers(), principal.getName());
+        return ResponseEntity.ok(results);
+    }
+
     @PostMapping("/{id}/block")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<Void> requestBlock(@PathVariable Long id, Principal principal) {
@@ -90,6 +137,13 @@ public class CardController {
         return ResponseEntity.ok().build();
     }
 
+    @PutMapping("/{id}/balance-slots")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CardResponse> setBalanceSlots(@PathVariable Long id, @RequestParam int slots) {
+        CardResponse card = cardService.setBalanceSlots(id, slots);
+        return ResponseEntity.ok(card);
+    }
+
     @PostMapping("/{id}/activate")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> activateByAdmin(@PathVariable Long id) {
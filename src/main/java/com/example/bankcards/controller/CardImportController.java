@@ -0,0 +1,35 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.CardImportResponse;
+import com.example.bankcards.service.CardImportService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/admin/import")
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Import", description = "Bulk card issuance (admin)")
+public class CardImportController {
+
+    private final CardImportService cardImportService;
+
+    public CardImportController(CardImportService cardImportService) {
+        this.cardImportService = cardImportService;
+    }
+
+    // Тело читается потоком, файл целиком в память не загружается
+    @PostMapping(value = "/cards", consumes = "text/csv")
+    public ResponseEntity<CardImportResponse> importCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(cardImportService.importCards(CardImportService.Format.CSV, body));
+    }
+
+    @PostMapping(value = "/cards", consumes = "application/x-ndjson")
+    public ResponseEntity<CardImportResponse> importNdjson(InputStream body) throws IOException {
+        return ResponseEntity.ok(cardImportService.importCards(CardImportService.Format.NDJSON, body));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.service.ExportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/admin/export")
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Export", description = "Full data export (admin)")
+public class ExportController {
+
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    public static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/cards")
+    public ResponseEntity<StreamingResponseBody> cards(@RequestParam(defaultValue = "NDJSON") ExportService.Format format) {
+        return stream("cards", format, out -> exportService.exportCards(format, out));
+    }
+
+    @GetMapping("/transfers")
+    public ResponseEntity<StreamingResponseBody> transfers(@RequestParam(defaultValue = "NDJSON") ExportService.Format format) {
+        return stream("transfers", format, out -> exportService.exportTransfers(format, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(String name, ExportService.Format format, StreamingResponseBody body) {
+        String fileName = name + (format == ExportService.Format.CSV ? ".csv" : ".ndjson");
+        return ResponseEntity.ok()
+                .contentType(format == ExportService.Format.CSV ? CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+}
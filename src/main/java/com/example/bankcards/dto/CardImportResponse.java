@@ -0,0 +1,36 @@
+package com.example.bankcards.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CardImportResponse {
+
+    private long imported;
+    private long rejected;
+    // Не больше card.import.max-errors первых ошибок, rejected считает все
+    private List<RowError> errors = new ArrayList<>();
+
+    public static class RowError {
+        private long line;
+        private String error;
+
+        public RowError() {}
+
+        public RowError(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() { return line; }
+        public void setLine(long line) { this.line = line; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+
+    public long getImported() { return imported; }
+    public void setImported(long imported) { this.imported = imported; }
+    public long getRejected() { return rejected; }
+    public void setRejected(long rejected) { this.rejected = rejected; }
+    public List<RowError> getErrors() { return errors; }
+    public void setErrors(List<RowError> errors) { this.errors = errors; }
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.*;
+
+public class CardLookupRequest {
+
+    @NotBlank
+    @Pattern(regexp = "\\d{16}", message = "Card number must be 16 digits")
+    private String number;
+
+    public String getNumber() { return number; }
+    public void setNumber(String number) { this.number = number; }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class CardSliceResponse {
+    private List<CardResponse> items;
+    private String nextCursor; // null — страниц больше нет
+
+    public CardSliceResponse() {
+    }
+
+    public CardSliceResponse(List<CardResponse> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<CardResponse> getItems() { return items; }
+    public void setItems(List<CardResponse> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.dto;
+
+import java.util.Date;
+
+/**
+ * Строка карты для списков и чтения по id: JPQL-проекция с неявными join владельца и статуса
+ * (фильтры остаются на внешних ключах cards), одна SQL-команда без догрузки связей. number — шифртекст, нужен только картам без numberLast4.
+ */
+public record CardView(Long id, String number, String numberLast4, Long ownerId, String ownerUsername,
+                       Date expiration, String statusName, Long balance) {
+}
@@ -0,0 +1,17 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class TransferBatchRequest {
+
+    @NotEmpty
+    @Size(max = 10000)
+    private List<@Valid TransferDTO> transfers;
+
+    public List<TransferDTO> getTransfers() { return transfers; }
+    public void setTransfers(List<TransferDTO> transfers) { this.transfers = transfers; }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class TransferHistoryResponse {
+    private List<TransferResponse> items;
+    private String nextCursor; // null — страниц больше нет
+
+    public TransferHistoryResponse() {
+    }
+
+    public TransferHistoryResponse(List<TransferResponse> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransferResponse> getItems() { return items; }
+    public void setItems(List<TransferResponse> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
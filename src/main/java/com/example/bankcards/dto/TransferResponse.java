@@ -0,0 +1,34 @@
+package com.example.bankcards.dto;
+
+import java.time.LocalDateTime;
+
+public class TransferResponse {
+    private Long id;
+    private Long fromCardId;
+    private Long toCardId;
+    private Long amount;
+    private LocalDateTime createdAt;
+
+    public TransferResponse() {
+    }
+
+    // Используется JPQL-проекцией TransferRepository
+    public TransferResponse(Long id, Long fromCardId, Long toCardId, Long amount, LocalDateTime createdAt) {
+        this.id = id;
+        this.fromCardId = fromCardId;
+        this.toCardId = toCardId;
+        this.amount = amount;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getFromCardId() { return fromCardId; }
+    public void setFromCardId(Long fromCardId) { this.fromCardId = fromCardId; }
+    public Long getToCardId() { return toCardId; }
+    public void setToCardId(Long toCardId) { this.toCardId = toCardId; }
+    public Long getAmount() { return amount; }
+    public void setAmount(Long amount) { this.amount = amount; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards.dto;
+
+public class TransferResult {
+
+    public enum Status { COMPLETED, REJECTED }
+
+    private int index;
+    private Status status;
+    private Long transferId;
+    private String error;
+
+    public static TransferResult completed(int index, Long transferId) {
+        TransferResult result = new TransferResult();
+        result.setIndex(index);
+        result.setStatus(Status.COMPLETED);
+        result.setTransferId(transferId);
+        return result;
+    }
+
+    public static TransferResult rejected(int index, String error) {
+        TransferResult result = new TransferResult();
+        result.setIndex(index);
+        result.setStatus(Status.REJECTED);
+        result.setError(error);
+        return result;
+    }
+
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    public Long getTransferId() { return transferId; }
+    public void setTransferId(Long transferId) { this.transferId = transferId; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
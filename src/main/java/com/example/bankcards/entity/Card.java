@@ -1,20 +1,31 @@
 package com.example.bankcards.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Formula;
 import java.util.Date;
 import java.util.Set;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "cards")
+@DynamicUpdate // UPDATE только изменённых колонок: смена статуса не перезаписывает balance, изменённый SQL-ом
 public class Card {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Пул из последовательности, как у Transfer: вставки батчатся, а импорт карт берёт id из того же cards_seq
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cards_seq")
+    @SequenceGenerator(name = "cards_seq", sequenceName = "cards_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "number", nullable = false, unique = true)
     private String number; // Зашифрованный номер
 
+    @Column(name = "number_hash", length = 64, unique = true)
+    private String numberHash; // HMAC номера для поиска
+
+    @Column(name = "number_last4", length = 4)
+    private String numberLast4; // Последние 4 цифры для маски
+
     @ManyToOne
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
@@ -30,6 +41,14 @@ public class Card {
     @Column(name = "balance", nullable = false)
     private Long balance = 0L;
 
+    @Column(name = "balance_slots", nullable = false)
+    private Integer balanceSlots = 0; // 0 — баланс только в cards, K > 0 — зачисления расходятся по K слотам
+
+    // Сумма слотов card_balance_slots; полный баланс — balance + slotBalance
+    @Formula("(case when balance_slots > 0 then (select coalesce(sum(s.balance), 0) " +
+            "from card_balance_slots s where s.card_id = id) else 0 end)")
+    private Long slotBalance;
+
 
     public Long getId() {
         return id;
@@ -47,6 +66,22 @@ public class Card {
         this.number = number;
     }
 
+    public String getNumberHash() {
+        return numberHash;
+    }
+
+    public void setNumberHash(String numberHash) {
+        this.numberHash = numberHash;
+    }
+
+    public String getNumberLast4() {
+        return numberLast4;
+    }
+
+    public void setNumberLast4(String numberLast4) {
+        this.numberLast4 = numberLast4;
+    }
+
     public User getOwner() {
         return owner;
     }
@@ -78,4 +113,24 @@ public class Card {
     public void setBalance(Long balance) {
         this.balance = balance;
     }
+
+    public Integer getBalanceSlots() {
+        return balanceSlots;
+    }
+
+    public void setBalanceSlots(Integer balanceSlots) {
+        this.balanceSlots = balanceSlots;
+    }
+
+    public Long getSlotBalance() {
+        return slotBalance;
+    }
+
+    public void setSlotBalance(Long slotBalance) {
+        this.slotBalance = slotBalance;
+    }
+
+    public Long getTotalBalance() {
+        return slotBalance == null ? balance : balance + slotBalance;
+    }
 }
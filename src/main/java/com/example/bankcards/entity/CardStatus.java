@@ -28,4 +28,8 @@ public class CardStatus {
     public void setName(String name) {
         this.name = name;
     }
+
+    public enum Code {
+        ACTIVE, BLOCKED, EXPIRED
+    }
 }
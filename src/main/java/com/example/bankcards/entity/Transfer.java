@@ -7,7 +7,9 @@ import java.time.LocalDateTime;
 @Table(name = "transfers")
 public class Transfer {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Пул из последовательности, чтобы Hibernate мог батчить вставки (IDENTITY батчинг отключает)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfers_seq")
+    @SequenceGenerator(name = "transfers_seq", sequenceName = "transfers_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
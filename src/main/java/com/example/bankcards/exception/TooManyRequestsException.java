@@ -0,0 +1,10 @@
+package com.example.bankcards.exception;
+
+/**
+ * Сервис перегружен и не принимает запрос; клиенту отвечаем 429, чтобы он повторил позже.
+ */
+public class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
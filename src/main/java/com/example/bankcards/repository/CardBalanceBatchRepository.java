@@ -0,0 +1,23 @@
+package com.example.bankcards.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Пакетные изменения балансов через JDBC batch. Для каждого изменения возвращается число
+ * обновлённых строк (0 — условие не выполнено), в том же порядке, что и входной список.
+ */
+public interface CardBalanceBatchRepository {
+
+    record BalanceChange(Long cardId, Long amount) {}
+
+    // Блокирует строки карт по возрастанию id (SELECT ... ORDER BY id FOR UPDATE)
+    void lockAll(Collection<Long> cardIds);
+
+    int[] debitAll(Long ownerId, Long statusId, List<BalanceChange> changes);
+
+    int[] creditAll(Long ownerId, Long statusId, List<BalanceChange> changes);
+
+    // Возврат списания без проверок, для откатов внутри пакета
+    int[] refundAll(List<BalanceChange> changes);
+}
@@ -0,0 +1,53 @@
+package com.example.bankcards.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class CardBalanceBatchRepositoryImpl implements CardBalanceBatchRepository {
+
+    private static final String DEBIT_SQL = "UPDATE cards SET balance = balance - ? " +
+            "WHERE id = ? AND owner_id = ? AND status_id = ? AND balance >= ?";
+    private static final String CREDIT_SQL = "UPDATE cards SET balance = balance + ? " +
+            "WHERE id = ? AND owner_id = ? AND status_id = ?";
+    private static final String REFUND_SQL = "UPDATE cards SET balance = balance + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardBalanceBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void lockAll(Collection<Long> cardIds) {
+        if (cardIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.queryForList("SELECT id FROM cards WHERE id IN ("
+                + String.join(",", Collections.nCopies(cardIds.size(), "?")) + ") ORDER BY id FOR UPDATE",
+                Long.class, cardIds.toArray());
+    }
+
+    @Override
+    public int[] debitAll(Long ownerId, Long statusId, List<BalanceChange> changes) {
+        return jdbcTemplate.batchUpdate(DEBIT_SQL, changes.stream()
+                .map(c -> new Object[]{c.amount(), c.cardId(), ownerId, statusId, c.amount()})
+                .toList());
+    }
+
+    @Override
+    public int[] creditAll(Long ownerId, Long statusId, List<BalanceChange> changes) {
+        return jdbcTemplate.batchUpdate(CREDIT_SQL, changes.stream()
+                .map(c -> new Object[]{c.amount(), c.cardId(), ownerId, statusId})
+                .toList());
+    }
+
+    @Override
+    public int[] refundAll(List<BalanceChange> changes) {
+        return jdbcTemplate.batchUpdate(REFUND_SQL, changes.stream()
+                .map(c -> new Object[]{c.amount(), c.cardId()})
+                .toList());
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bankcards.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Слоты баланса (card_balance_slots) для карт с большим числом зачислений: зачисление обновляет
+ * одну из K строк слотов, а не строку cards, поэтому параллельные зачисления не ждут одну блокировку.
+ * Полный баланс карты — cards.balance плюс сумма слотов.
+ * Порядок блокировок во всех путях один: сначала строки cards по возрастанию id, затем строки слотов
+ * по возрастанию (card_id, slot) — и при списании (consolidate), и при зачислении в слот.
+ */
+public interface CardBalanceSlotRepository {
+
+    // Зачисление в слот, если карта принадлежит владельцу и в нужном статусе; 0 — слота нет или условие не выполнено
+    int creditSlot(Long cardId, int slot, Long ownerId, Long statusId, Long amount);
+
+    // Одним запросом по возрастанию (card_id, slot) блокирует все слоты карт cardIds и по одному
+    // слоту карт из creditSlots (id карты -> номер слота)
+    void lockSlots(Collection<Long> cardIds, Map<Long, Integer> creditSlots);
+
+    // Переносит суммы слотов в cards.balance; строка cards должна быть уже заблокирована,
+    // слоты остаются заблокированными до конца транзакции
+    long consolidate(Long cardId);
+
+    // Слоты [from, to) с нулевым балансом
+    void createSlots(Long cardId, int from, int to);
+
+    // Удаляет слоты с номером >= from; вызывать после consolidate в той же транзакции
+    void deleteSlotsFrom(Long cardId, int from);
+}
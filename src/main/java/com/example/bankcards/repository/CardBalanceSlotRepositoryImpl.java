@@ -0,0 +1,88 @@
+package com.example.bankcards.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public class CardBalanceSlotRepositoryImpl implements CardBalanceSlotRepository {
+
+    // Владелец и статус проверяются чтением cards без блокировки строки карты
+    private static final String CREDIT_SLOT_SQL = "UPDATE card_balance_slots SET balance = balance + ? " +
+            "WHERE card_id = ? AND slot = ? AND EXISTS (SELECT 1 FROM cards c " +
+            "WHERE c.id = ? AND c.owner_id = ? AND c.status_id = ?)";
+    private static final String LOCK_SLOTS_SQL = "SELECT slot, balance FROM card_balance_slots " +
+            "WHERE card_id = ? ORDER BY slot FOR UPDATE";
+    private static final String TAKE_SLOT_SQL = "UPDATE card_balance_slots SET balance = balance - ? " +
+            "WHERE card_id = ? AND slot = ?";
+    private static final String ADD_BALANCE_SQL = "UPDATE cards SET balance = balance + ? WHERE id = ?";
+    private static final String CREATE_SLOT_SQL = "INSERT INTO card_balance_slots (card_id, slot, balance) VALUES (?, ?, 0)";
+    private static final String DELETE_SLOTS_SQL = "DELETE FROM card_balance_slots WHERE card_id = ? AND slot >= ?";
+
+    private record Slot(int slot, long balance) {}
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardBalanceSlotRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int creditSlot(Long cardId, int slot, Long ownerId, Long statusId, Long amount) {
+        return jdbcTemplate.update(CREDIT_SLOT_SQL, amount, cardId, slot, cardId, ownerId, statusId);
+    }
+
+    @Override
+    public void lockSlots(Collection<Long> cardIds, Map<Long, Integer> creditSlots) {
+        if (cardIds.isEmpty() && creditSlots.isEmpty()) {
+            return;
+        }
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (!cardIds.isEmpty()) {
+            conditions.add("card_id IN (" + String.join(",", Collections.nCopies(cardIds.size(), "?")) + ")");
+            args.addAll(cardIds);
+        }
+        creditSlots.forEach((cardId, slot) -> {
+            conditions.add("(card_id = ? AND slot = ?)");
+            args.add(cardId);
+            args.add(slot);
+        });
+        jdbcTemplate.queryForList("SELECT card_id FROM card_balance_slots WHERE " + String.join(" OR ", conditions)
+                + " ORDER BY card_id, slot FOR UPDATE", Long.class, args.toArray());
+    }
+
+    @Override
+    public long consolidate(Long cardId) {
+        // Под блокировкой слотов новые зачисления ждут, поэтому переносится ровно прочитанная сумма
+        List<Slot> slots = jdbcTemplate.query(LOCK_SLOTS_SQL,
+                (rs, i) -> new Slot(rs.getInt("slot"), rs.getLong("balance")), cardId).stream()
+                .filter(s -> s.balance() != 0)
+                .toList();
+        if (slots.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(TAKE_SLOT_SQL, slots.stream()
+                .map(s -> new Object[]{s.balance(), cardId, s.slot()})
+                .toList());
+        long total = slots.stream().mapToLong(Slot::balance).sum();
+        jdbcTemplate.update(ADD_BALANCE_SQL, total, cardId);
+        return total;
+    }
+
+    @Override
+    public void createSlots(Long cardId, int from, int to) {
+        jdbcTemplate.batchUpdate(CREATE_SLOT_SQL, IntStream.range(from, to)
+                .mapToObj(slot -> new Object[]{cardId, slot})
+                .toList());
+    }
+
+    @Override
+    public void deleteSlotsFrom(Long cardId, int from) {
+        jdbcTemplate.update(DELETE_SLOTS_SQL, cardId, from);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Порции для CardExpirySweeper. Обход идёт по индексу ix_cards_expiration ключом (expiration, id),
+ * поэтому каждая порция продолжает с места предыдущей, а не просматривает диапазон заново.
+ */
+public interface CardExpiryRepository {
+
+    record ExpiryKey(LocalDate expiration, Long id) {}
+
+    // Ключи карт не в expiredStatusId с expiration раньше before, после after (null — с начала), по порядку индекса
+    List<ExpiryKey> findExpiryKeys(LocalDate before, Long expiredStatusId, ExpiryKey after, int limit);
+
+    // Переводит в expiredStatusId те карты из ids, что ещё не в нём и по-прежнему с expiration раньше before
+    // (срок могли продлить после чтения ключей); возвращает число изменённых
+    int expireAll(List<Long> ids, LocalDate before, Long expiredStatusId);
+}
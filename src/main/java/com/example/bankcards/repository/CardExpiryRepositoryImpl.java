@@ -0,0 +1,49 @@
+package com.example.bankcards.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CardExpiryRepositoryImpl implements CardExpiryRepository {
+
+    private static final String FIRST_KEYS_SQL = "SELECT expiration, id FROM cards " +
+            "WHERE expiration < ? AND status_id <> ? ORDER BY expiration, id LIMIT ?";
+    private static final String NEXT_KEYS_SQL = "SELECT expiration, id FROM cards " +
+            "WHERE expiration < ? AND status_id <> ? AND (expiration > ? OR (expiration = ? AND id > ?)) " +
+            "ORDER BY expiration, id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardExpiryRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<ExpiryKey> findExpiryKeys(LocalDate before, Long expiredStatusId, ExpiryKey after, int limit) {
+        if (after == null) {
+            return jdbcTemplate.query(FIRST_KEYS_SQL, (rs, i) -> new ExpiryKey(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                    Date.valueOf(before), expiredStatusId, limit);
+        }
+        Date afterExpiration = Date.valueOf(after.expiration());
+        return jdbcTemplate.query(NEXT_KEYS_SQL, (rs, i) -> new ExpiryKey(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                Date.valueOf(before), expiredStatusId, afterExpiration, afterExpiration, after.id(), limit);
+    }
+
+    @Override
+    public int expireAll(List<Long> ids, LocalDate before, Long expiredStatusId) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>(ids.size() + 3);
+        args.add(expiredStatusId);
+        args.add(expiredStatusId);
+        args.add(Date.valueOf(before));
+        args.addAll(ids);
+        return jdbcTemplate.update("UPDATE cards SET status_id = ? WHERE status_id <> ? AND expiration < ? AND id IN ("
+                + String.join(",", Collections.nCopies(ids.size(), "?")) + ")", args.toArray());
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.bankcards.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Массовая вставка карт через JDBC batch. id выдаются блоками из cards_seq по той же схеме,
+ * что у pooled-оптимизатора Hibernate для Card, поэтому импорт и обычные вставки не пересекаются.
+ */
+public interface CardImportRepository {
+
+    record NewCard(String number, String numberHash, String numberLast4, Long ownerId,
+                   Date expiration, Long statusId, Long balance) {}
+
+    // Возвращает id вставленных карт в порядке входного списка
+    List<Long> insertAll(List<NewCard> cards);
+
+    Set<String> findExistingNumberHashes(Collection<String> numberHashes);
+
+    Set<Long> findExistingOwnerIds(Collection<Long> ownerIds);
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class CardImportRepositoryImpl implements CardImportRepository {
+
+    // Равен incrementBy у cards_seq и allocationSize у Card.id
+    private static final int ALLOCATION_SIZE = 50;
+
+    private static final String INSERT_SQL = "INSERT INTO cards " +
+            "(id, number, number_hash, number_last4, owner_id, expiration, status_id, balance) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Текущий блок id: как в pooled-оптимизаторе, значение последовательности v покрывает (v - 49 .. v]
+    // ReentrantLock, а не synchronized: под блокировкой запрос в БД, виртуальный поток не должен пиннить носитель
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextId = 1;
+    private long hiId = 0;
+
+    public CardImportRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Long> insertAll(List<NewCard> cards) {
+        List<Long> ids = allocateIds(cards.size());
+        List<Object[]> args = new ArrayList<>(cards.size());
+        for (int i = 0; i < cards.size(); i++) {
+            NewCard card = cards.get(i);
+            args.add(new Object[]{ids.get(i), card.number(), card.numberHash(), card.numberLast4(), card.ownerId(),
+                    new java.sql.Date(card.expiration().getTime()), card.statusId(), card.balance()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+        return ids;
+    }
+
+    @Override
+    public Set<String> findExistingNumberHashes(Collection<String> numberHashes) {
+        if (numberHashes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT number_hash FROM cards WHERE number_hash IN ("
+                + placeholders(numberHashes.size()) + ")", String.class, numberHashes.toArray()));
+    }
+
+    @Override
+    public Set<Long> findExistingOwnerIds(Collection<Long> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM users WHERE id IN ("
+                + placeholders(ownerIds.size()) + ")", Long.class, ownerIds.toArray()));
+    }
+
+    private List<Long> allocateIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        idLock.lock();
+        try {
+            while (ids.size() < count) {
+                if (nextId > hiId) {
+                    long value = jdbcTemplate.queryForObject("SELECT nextval('cards_seq')", Long.class);
+                    hiId = value;
+                    nextId = Math.max(1, value - ALLOCATION_SIZE + 1);
+                }
+                ids.add(nextId++);
+            }
+        } finally {
+            idLock.unlock();
+        }
+        return ids;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
@@ -1,17 +1,86 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.CardView;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
-import com.example.bankcards.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface CardRepository extends JpaRepository<Card, Long> {
-    Page<Card> findByStatusAndOwner(CardStatus status, User owner, Pageable pageable);
-    Page<Card> findByStatus(CardStatus status, Pageable pageable);
-    Page<Card> findByOwner(User owner, Pageable pageable);
-    Page<Card> findByOwnerAndStatus(User owner, CardStatus status, Pageable pageable);
+public interface CardRepository extends JpaRepository<Card, Long>, CardBalanceBatchRepository,
+        CardBalanceSlotRepository, CardImportRepository, CardExpiryRepository {
+    // Проекции для чтения: владелец и статус подтягиваются join-ом, сумма слотов баланса — подзапросом в той же команде.
+    // Фильтры — по внешним ключам самой cards, под индексы из 012-add-cards-filter-indexes. Join-ы неявные:
+    // при явном join c.owner o Hibernate переносит условие c.owner.id на users.id, и индекс cards не используется
+    String VIEW = "select new com.example.bankcards.dto.CardView(c.id, c.number, c.numberLast4, c.owner.id, " +
+            "c.owner.username, c.expiration, c.status.name, c.balance + c.slotBalance) from Card c ";
+    String AFTER_ID = " c.id > :afterId order by c.id";
+    // Без явного порядка страницы OFFSET/LIMIT не стабильны: строки могут повторяться и теряться между страницами
+    String ORDER_BY_ID = " order by c.id";
+
+    @Query(VIEW + "where c.id = :id")
+    Optional<CardView> findViewById(@Param("id") Long id);
+
+    @Query(value = VIEW + ORDER_BY_ID, countQuery = "select count(c) from Card c")
+    Page<CardView> findViews(Pageable pageable);
+
+    @Query(value = VIEW + "where c.status.id = :statusId" + ORDER_BY_ID,
+            countQuery = "select count(c) from Card c where c.status.id = :statusId")
+    Page<CardView> findViewsByStatus(@Param("statusId") Long statusId, Pageable pageable);
+
+    @Query(value = VIEW + "where c.owner.id = :ownerId" + ORDER_BY_ID,
+            countQuery = "select count(c) from Card c where c.owner.id = :ownerId")
+    Page<CardView> findViewsByOwner(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    @Query(value = VIEW + "where c.owner.id = :ownerId and c.status.id = :statusId" + ORDER_BY_ID,
+            countQuery = "select count(c) from Card c where c.owner.id = :ownerId and c.status.id = :statusId")
+    Page<CardView> findViewsByOwnerAndStatus(@Param("ownerId") Long ownerId, @Param("statusId") Long statusId,
+                                             Pageable pageable);
+
+    // Keyset-пагинация по id: без OFFSET и COUNT(*)
+    @Query(VIEW + "where" + AFTER_ID)
+    List<CardView> scrollViews(@Param("afterId") Long afterId, Limit limit);
+
+    @Query(VIEW + "where c.status.id = :statusId and" + AFTER_ID)
+    List<CardView> scrollViewsByStatus(@Param("statusId") Long statusId, @Param("afterId") Long afterId, Limit limit);
+
+    @Query(VIEW + "where c.owner.id = :ownerId and" + AFTER_ID)
+    List<CardView> scrollViewsByOwner(@Param("ownerId") Long ownerId, @Param("afterId") Long afterId, Limit limit);
+
+    @Query(VIEW + "where c.owner.id = :ownerId and c.status.id = :statusId and" + AFTER_ID)
+    List<CardView> scrollViewsByOwnerAndStatus(@Param("ownerId") Long ownerId, @Param("statusId") Long statusId,
+                                               @Param("afterId") Long afterId, Limit limit);
+
+    Optional<Card> findByNumberHash(String numberHash);
+
+    // Условные списание и зачисление: 0 обновлённых строк означает, что условие перевода не выполнено
+    @Modifying
+    @Query("update Card c set c.balance = c.balance - :amount where c.id = :id and c.owner.id = :ownerId " +
+            "and c.status = :status and c.balance >= :amount")
+    int debit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("status") CardStatus status,
+              @Param("amount") Long amount);
+
+    @Modifying
+    @Query("update Card c set c.balance = c.balance + :amount where c.id = :id and c.owner.id = :ownerId " +
+            "and c.status = :status")
+    int credit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("status") CardStatus status,
+               @Param("amount") Long amount);
+
+    @Query("select c.balanceSlots from Card c where c.id = :id")
+    Optional<Integer> findBalanceSlotsById(@Param("id") Long id);
+
+    @Query("select c.id from Card c where c.balanceSlots > 0 and c.id > :afterId order by c.id")
+    List<Long> findSlottedIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select c from Card c where c.id > :id and (c.numberHash is null or c.numberLast4 is null) order by c.id")
+    List<Card> findNumberBackfillCandidates(@Param("id") Long id, Pageable pageable);
 }
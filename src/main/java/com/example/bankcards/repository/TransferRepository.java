@@ -1,9 +1,36 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.TransferResponse;
 import com.example.bankcards.entity.Transfer;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
 public interface TransferRepository extends JpaRepository<Transfer, Long> {
+
+    // Keyset-пагинация истории по (created_at, id), по убыванию; индексы из 011-add-transfers-history-indexes
+    String PROJECTION = "select new com.example.bankcards.dto.TransferResponse(" +
+            "t.id, t.fromCard.id, t.toCard.id, t.amount, t.createdAt) from Transfer t ";
+    String AFTER_CURSOR = " and (t.createdAt < :createdAt or (t.createdAt = :createdAt and t.id < :id))";
+    String ORDER = " order by t.createdAt desc, t.id desc";
+
+    @Query(PROJECTION + "where t.fromCard.id = :cardId" + ORDER)
+    List<TransferResponse> findOutgoing(@Param("cardId") Long cardId, Limit limit);
+
+    @Query(PROJECTION + "where t.fromCard.id = :cardId" + AFTER_CURSOR + ORDER)
+    List<TransferResponse> findOutgoingAfter(@Param("cardId") Long cardId, @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id, Limit limit);
+
+    @Query(PROJECTION + "where t.toCard.id = :cardId" + ORDER)
+    List<TransferResponse> findIncoming(@Param("cardId") Long cardId, Limit limit);
+
+    @Query(PROJECTION + "where t.toCard.id = :cardId" + AFTER_CURSOR + ORDER)
+    List<TransferResponse> findIncomingAfter(@Param("cardId") Long cardId, @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id, Limit limit);
 }
@@ -2,33 +2,32 @@ package com.example.bankcards.security;
 
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserCache userCache;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, UserCache userCache) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
+        return userCache.findByUsername(username)
+                .map(UserCache.CachedUser::toPrincipal)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
 
-        SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + user.getRole().name());
-
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                List.of(authority)
-        );
+    // Для выдачи токенов по refresh: роль берётся из БД, а не из кэша другого инстанса
+    public UserDetails loadCurrentUserByUsername(String username) throws UsernameNotFoundException {
+        return userCache.reload(username)
+                .map(UserCache.CachedUser::toPrincipal)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
     }
 
     public void saveUser(String username, String encodedPassword, User.Role role) {
@@ -54,5 +53,6 @@ public class CustomUserDetailsService implements UserDetailsService {
         }
 
         userRepository.save(newUser);
+        userCache.evict(username);
     }
 }
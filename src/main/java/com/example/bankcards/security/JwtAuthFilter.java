@@ -1,28 +1,56 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.config.JwtProperties;
+import com.example.bankcards.util.RequestTimings;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
+
     @Autowired
     private JwtUtils jwtUtils;
 
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    @Autowired
+    private TokenRevocationRegistry revocationRegistry;
+
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    private Timer validTokenTimer = verifyTimer(Metrics.globalRegistry, "valid");
+    private Timer invalidTokenTimer = verifyTimer(Metrics.globalRegistry, "invalid");
+
+    @Autowired
+    void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.validTokenTimer = verifyTimer(meterRegistry, "valid");
+        this.invalidTokenTimer = verifyTimer(meterRegistry, "invalid");
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
@@ -31,27 +59,50 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
 
-        String jwt = null;
-        String username = null;
-
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            jwt = authHeader.substring(7);
-            username = jwtUtils.extractUsername(jwt);
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // Токен разбирается и проверяется один раз; невалидный просто не аутентифицирует запрос
+            long start = System.nanoTime();
+            Optional<Claims> claims = jwtUtils.parseClaims(authHeader.substring(7));
+            long elapsed = System.nanoTime() - start;
+            (claims.isPresent() ? validTokenTimer : invalidTokenTimer).record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Phase.JWT, elapsed);
+            claims.ifPresent(c -> authenticate(c, request));
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-            if (jwtUtils.isTokenValid(jwt, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        filterChain.doFilter(request, response);
+    }
 
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+    private void authenticate(Claims claims, HttpServletRequest request) {
+        UserDetails userDetails = null;
+        if (jwtProperties.isStatelessAuth()) {
+            Optional<UserPrincipal> principal = jwtUtils.principalFromClaims(claims);
+            if (principal.isPresent()) {
+                if (revocationRegistry.isRevoked(principal.get().getId(), claims.getIssuedAt())) {
+                    logger.debug("JWT issued before revocation for user {}", principal.get().getId());
+                    return;
+                }
+                userDetails = principal.get();
+            }
+        }
+        if (userDetails == null) {
+            try {
+                userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+            } catch (UsernameNotFoundException e) {
+                logger.debug("JWT subject no longer exists: {}", claims.getSubject());
+                return;
             }
         }
 
-        filterChain.doFilter(request, response);
+        UsernamePasswordAuthenticationToken authToken =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+
+    private static Timer verifyTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("jwt.verify").tag("outcome", outcome).register(meterRegistry);
     }
 }
@@ -1,59 +1,141 @@
 package com.example.bankcards.security;
 
 import com.example.bankcards.config.JwtProperties;
+import com.example.bankcards.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
 
 @Component
 public class JwtUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
+    private static final int MAX_TOKEN_LENGTH = 4096;
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+
     private final JwtProperties jwtProperties;
-    private SecretKey key;
+    private final SecretKey key;
+    private final JwtParser parser;
+    // Недавно проверенные токены по подписи, хранятся до истечения срока токена
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
     public JwtUtils(JwtProperties jwtProperties) {
         this.jwtProperties = jwtProperties;
         this.key = Keys.hmacShaKeyFor(jwtProperties.getSecret().getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(jwtProperties.getVerifiedCacheSize())
+                .expireAfter(Expiry.creating((String signature, VerifiedToken verified) ->
+                        Duration.ofMillis(Math.max(0L, verified.claims().getExpiration().getTime() - System.currentTimeMillis()))))
+                .build();
     }
 
     public String generateAccessToken(UserDetails userDetails) {
-        return buildToken(userDetails.getUsername(), jwtProperties.getAccessExpirationMs());
+        Map<String, Object> claims = Map.of();
+        if (userDetails instanceof UserPrincipal principal) {
+            // id и роль в токене позволяют JwtAuthFilter не ходить в БД
+            claims = Map.of(CLAIM_USER_ID, principal.getId(), CLAIM_ROLE, principal.getRole().name());
+        }
+        return buildToken(userDetails.getUsername(), claims, jwtProperties.getAccessExpirationMs());
     }
 
     public String generateRefreshToken(UserDetails userDetails) {
-        return buildToken(userDetails.getUsername(), jwtProperties.getRefreshExpirationMs());
+        return buildToken(userDetails.getUsername(), Map.of(), jwtProperties.getRefreshExpirationMs());
     }
 
-    private String buildToken(String subject, long expirationMs) {
+    private String buildToken(String subject, Map<String, Object> claims, long expirationMs) {
         return Jwts.builder()
-                .setSubject(subject)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + expirationMs))
+                .claims(claims)
+                .subject(subject)
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + expirationMs))
                 .signWith(key)
                 .compact();
     }
 
-    public String extractUsername(String token) {
-        return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+    /**
+     * Собирает principal из claims access-токена; пусто, если в токене нет id или роли.
+     */
+    public Optional<UserPrincipal> principalFromClaims(Claims claims) {
+        Long userId = claims.get(CLAIM_USER_ID, Long.class);
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (userId == null || role == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new UserPrincipal(userId, claims.getSubject(), "", User.Role.valueOf(role)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
     }
 
-    public boolean isTokenValid(String token, UserDetails userDetails) {
+    /**
+     * Проверяет подпись и срок действия токена и возвращает его claims.
+     * Невалидный токен даёт пустой результат, без исключения.
+     */
+    public Optional<Claims> parseClaims(String token) {
+        if (token == null || token.isEmpty() || token.length() > MAX_TOKEN_LENGTH) {
+            return Optional.empty();
+        }
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0 || signatureStart == token.length() - 1) {
+            return Optional.empty();
+        }
+        String signature = token.substring(signatureStart + 1);
+
+        VerifiedToken cached = verifiedTokens.getIfPresent(signature);
+        if (cached != null && cached.token().equals(token)) {
+            if (cached.claims().getExpiration().getTime() > System.currentTimeMillis()) {
+                return Optional.of(cached.claims());
+            }
+            verifiedTokens.invalidate(signature);
+            return Optional.empty();
+        }
+
         try {
-            String username = extractUsername(token);
-            return username.equals(userDetails.getUsername());
-        } catch (JwtException e) {
-            return false;
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            if (claims.getSubject() == null || claims.getExpiration() == null) {
+                return Optional.empty();
+            }
+            verifiedTokens.put(signature, new VerifiedToken(token, claims));
+            return Optional.of(claims);
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("Rejected JWT: {}", e.getMessage());
+            return Optional.empty();
         }
     }
-}
\ No newline at end of file
+
+    public String extractUsername(String token) {
+        return parseClaims(token)
+                .map(Claims::getSubject)
+                .orElseThrow(() -> new JwtException("Invalid JWT"));
+    }
+
+    public boolean isTokenValid(String token, UserDetails userDetails) {
+        return parseClaims(token)
+                .map(claims -> claims.getSubject().equals(userDetails.getUsername()))
+                .orElse(false);
+    }
+
+    private record VerifiedToken(String token, Claims claims) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.JwtProperties;
+import com.example.bankcards.entity.TokenRevocation;
+import com.example.bankcards.repository.TokenRevocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отзыв access-токенов при смене роли и удалении пользователя.
+ * Локальный отзыв действует сразу; отзывы с других инстансов подтягиваются опросом
+ * token_revocations раз в jwt.revocation-poll-ms — это и есть окно, в течение которого
+ * токен без обращения к users ещё может пройти. Вместе с отзывом из кэша пользователей
+ * удаляются записи отозванного пользователя.
+ */
+@Component
+public class TokenRevocationRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationRegistry.class);
+
+    private final TokenRevocationRepository repository;
+    private final JwtProperties jwtProperties;
+    private final UserCache userCache;
+    private final Map<Long, Instant> notBefore = new ConcurrentHashMap<>();
+    private volatile LocalDateTime lastPoll = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    public TokenRevocationRegistry(TokenRevocationRepository repository, JwtProperties jwtProperties,
+                                   UserCache userCache) {
+        this.repository = repository;
+        this.jwtProperties = jwtProperties;
+        this.userCache = userCache;
+    }
+
+    @Transactional
+    public void revoke(Long userId) {
+        // iat в JWT с точностью до секунды
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        TokenRevocation revocation = new TokenRevocation();
+        revocation.setUserId(userId);
+        revocation.setNotBefore(LocalDateTime.ofInstant(now, ZoneId.systemDefault()));
+        repository.save(revocation);
+        notBefore.merge(userId, now, (a, b) -> a.isAfter(b) ? a : b);
+        logger.info("Tokens revoked for user {}", userId);
+    }
+
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        Instant revokedAt = notBefore.get(userId);
+        // iat и отметка отзыва — целые секунды: токен, выданный в ту же секунду до отзыва, тоже отозван
+        return revokedAt != null && (issuedAt == null || !issuedAt.toInstant().isAfter(revokedAt));
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation-poll-ms:5000}")
+    @Transactional
+    public void poll() {
+        LocalDateTime pollStart = LocalDateTime.now();
+        for (TokenRevocation revocation : repository.findByNotBeforeAfter(lastPoll.minusSeconds(1))) {
+            Instant revokedAt = revocation.getNotBefore().atZone(ZoneId.systemDefault()).toInstant();
+            notBefore.merge(revocation.getUserId(), revokedAt, (a, b) -> a.isAfter(b) ? a : b);
+            // Роль или имя могли поменяться на другом инстансе; повторное удаление безвредно
+            userCache.evictById(revocation.getUserId());
+        }
+        lastPoll = pollStart;
+
+        // Токены старше срока жизни access-токена всё равно истекли
+        Instant horizon = Instant.now().minusMillis(jwtProperties.getAccessExpirationMs());
+        notBefore.values().removeIf(revokedAt -> revokedAt.isBefore(horizon));
+        repository.deleteOlderThan(LocalDateTime.ofInstant(horizon, ZoneId.systemDefault()));
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.ReplicaRoutingDataSource;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.RequestTimings;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Кэш пользователей по username: id, роль и хэш пароля.
+ * Хранит неизменяемые снимки, а не UserDetails: Spring Security обнуляет пароль в principal после логина.
+ * Запись удаляется при любом изменении пользователя; загрузка, начатая до удаления, в кэш не попадёт.
+ * Пользователь всегда читается с primary: с отстающей реплики после удаления записи вернулась бы
+ * старая роль и снова легла в кэш. Внутри read-only транзакции отдельная транзакция на primary
+ * открывается, только пока чтения действительно уходят на реплики: иначе внешняя транзакция уже
+ * на primary, а второе соединение из того же пула при промахе удваивало бы потребность запроса в соединениях.
+ */
+@Component
+public class UserCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    private final UserRepository userRepository;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRouting;
+    private final Cache<String, CachedUser> cache;
+    // Read-write транзакция маршрутизируется на primary; внутри read-only транзакции — отдельная
+    private final TransactionTemplate primaryRead;
+    private final TransactionTemplate primaryReadFromReadOnly;
+    // Растёт при каждом удалении; загрузка кладёт результат, только если удалений за это время не было
+    private long invalidations;
+
+    public UserCache(UserRepository userRepository, PlatformTransactionManager transactionManager,
+                     ObjectProvider<ReplicaRoutingDataSource> replicaRouting,
+                     @Value("${user-cache.ttl-ms:60000}") long ttlMs,
+                     @Value("${user-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.replicaRouting = replicaRouting;
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        this.primaryReadFromReadOnly = new TransactionTemplate(transactionManager);
+        this.primaryReadFromReadOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<CachedUser> findByUsername(String username) {
+        long start = RequestTimings.start();
+        try {
+            return lookup(username);
+        } finally {
+            RequestTimings.stop(RequestTimings.Phase.USER, start);
+        }
+    }
+
+    private Optional<CachedUser> lookup(String username) {
+        CachedUser cached = cache.getIfPresent(username);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long epoch;
+        synchronized (this) {
+            epoch = invalidations;
+        }
+        Optional<CachedUser> loaded = loadFromPrimary(username);
+        loaded.ifPresent(user -> {
+            synchronized (this) {
+                if (invalidations == epoch) {
+                    cache.put(username, user);
+                }
+            }
+        });
+        return loaded;
+    }
+
+    private Optional<CachedUser> loadFromPrimary(String username) {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primaryRead.execute(status -> load(username));
+        }
+        ReplicaRoutingDataSource routing = replicaRouting.getIfAvailable();
+        if (routing != null && routing.routesToReplicas()) {
+            return primaryReadFromReadOnly.execute(status -> load(username));
+        }
+        return load(username);
+    }
+
+    private Optional<CachedUser> load(String username) {
+        return userRepository.findByUsername(username).map(CachedUser::of);
+    }
+
+    public void evict(String username) {
+        invalidate(username);
+        // Внутри транзакции новые данные видны только после коммита — удаляем ещё раз после него
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(username);
+                }
+            });
+        }
+    }
+
+    /**
+     * Удаляет записи пользователя по id — так их находит опрос отзывов, где известен только id.
+     */
+    public synchronized void evictById(Long userId) {
+        invalidations++;
+        cache.asMap().values().removeIf(user -> user.id().equals(userId));
+        logger.debug("User cache entries evicted for user id: {}", userId);
+    }
+
+    /**
+     * Загрузка в обход кэша: для выдачи новых токенов устаревшая роль недопустима.
+     */
+    public Optional<CachedUser> reload(String username) {
+        invalidate(username);
+        return findByUsername(username);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private synchronized void invalidate(String username) {
+        invalidations++;
+        cache.invalidate(username);
+        logger.debug("User cache entry evicted: {}", username);
+    }
+
+    public record CachedUser(Long id, String username, String password, User.Role role) {
+
+        static CachedUser of(User user) {
+            return new CachedUser(user.getId(), user.getUsername(), user.getPassword(), user.getRole());
+        }
+
+        public UserPrincipal toPrincipal() {
+            return new UserPrincipal(id, username, password, role);
+        }
+    }
+}
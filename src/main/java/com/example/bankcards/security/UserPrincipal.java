@@ -0,0 +1,29 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+/**
+ * Principal с id и ролью пользователя; из него же собираются claims access-токена.
+ */
+public class UserPrincipal extends org.springframework.security.core.userdetails.User {
+
+    private final Long id;
+    private final User.Role role;
+
+    public UserPrincipal(Long id, String username, String password, User.Role role) {
+        super(username, password, List.of(new SimpleGrantedAuthority("ROLE_" + role.name())));
+        this.id = id;
+        this.role = role;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public User.Role getRole() {
+        return role;
+    }
+}
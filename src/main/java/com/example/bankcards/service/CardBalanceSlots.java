@@ -0,0 +1,163 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.repository.CardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Разделённый баланс для карт, на которые приходит много зачислений. Для карты с K слотами
+ * зачисление уходит в один из слотов, списание сначала собирает слоты в cards.balance,
+ * чтение суммирует cards.balance и слоты. Фоновая консолидация периодически переносит слоты в cards.balance.
+ * Число слотов карты кешируется ненадолго: устаревшее значение безопасно — зачисление в отсутствующий
+ * слот не проходит и уходит в cards.balance.
+ */
+@Component
+public class CardBalanceSlots {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardBalanceSlots.class);
+
+    private final CardRepository cardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxSlots;
+    private final int consolidateBatchSize;
+    private final Cache<Long, Integer> slotCounts;
+
+    public CardBalanceSlots(CardRepository cardRepository, PlatformTransactionManager transactionManager,
+                            @Value("${card.balance-slots.max:64}") int maxSlots,
+                            @Value("${card.balance-slots.cache-ttl-ms:5000}") long cacheTtlMs,
+                            @Value("${card.balance-slots.cache-size:10000}") long cacheSize,
+                            @Value("${card.balance-slots.consolidate-batch-size:100}") int consolidateBatchSize) {
+        this.cardRepository = cardRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxSlots = maxSlots;
+        this.consolidateBatchSize = consolidateBatchSize;
+        this.slotCounts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMillis(cacheTtlMs))
+                .build();
+    }
+
+    public boolean isSlotted(Long cardId) {
+        return slotCount(cardId) > 0;
+    }
+
+    /**
+     * Зачисление в слот карты. false — у карты нет слотов или условие зачисления
+     * не выполнено; тогда вызывающий зачисляет в cards.balance и при отказе определяет причину.
+     * Слот выбирается по потоку, а не случайно: все зачисления одной транзакции на карту попадают
+     * в один слот, и две транзакции не захватывают слоты одной карты в разном порядке.
+     */
+    public boolean credit(Long cardId, Long ownerId, Long statusId, Long amount) {
+        int slot = slotOf(cardId);
+        if (slot < 0) {
+            return false;
+        }
+        return cardRepository.creditSlot(cardId, slot, ownerId, statusId, amount) == 1;
+    }
+
+    /**
+     * Переносит слоты в cards.balance в текущей транзакции; возвращает перенесённую сумму.
+     * Строка cards блокируется раньше слотов — в порядке из CardBalanceSlotRepository.
+     */
+    public long consolidate(Long cardId) {
+        cardRepository.lockAll(List.of(cardId));
+        return cardRepository.consolidate(cardId);
+    }
+
+    /**
+     * Блокирует слоты карт переводов одной транзакции одним запросом по возрастанию (card_id, slot):
+     * все слоты карт списания и слот, в который зачислит этот поток, у карт зачисления. Затем собирает
+     * слоты карт списания в cards.balance. Строки cards вызывающий блокирует раньше.
+     */
+    public void lockForTransfer(Collection<Long> debitCardIds, Collection<Long> creditCardIds) {
+        List<Long> debits = debitCardIds.stream().distinct().filter(this::isSlotted).sorted().toList();
+        Map<Long, Integer> creditSlots = new TreeMap<>();
+        for (Long cardId : creditCardIds) {
+            int slot = slotOf(cardId);
+            if (slot >= 0 && !debits.contains(cardId)) {
+                creditSlots.put(cardId, slot);
+            }
+        }
+        cardRepository.lockSlots(debits, creditSlots);
+        debits.forEach(cardRepository::consolidate);
+    }
+
+    /**
+     * Меняет число слотов карты (0 — выключить). Вызывается в транзакции, где карта загружена:
+     * слоты сначала собираются в cards.balance, затем лишние удаляются, недостающие создаются.
+     */
+    public void resize(Card card, int slots) {
+        if (slots < 0 || slots > maxSlots) {
+            throw new IllegalArgumentException("slots must be between 0 and " + maxSlots);
+        }
+        // Полный баланс при этом не меняется, поэтому balance и slotBalance загруженной карты не трогаем
+        consolidate(card.getId());
+        int current = card.getBalanceSlots();
+        if (slots < current) {
+            cardRepository.deleteSlotsFrom(card.getId(), slots);
+        } else if (slots > current) {
+            cardRepository.createSlots(card.getId(), current, slots);
+        }
+        card.setBalanceSlots(slots);
+        slotCounts.invalidate(card.getId());
+        logger.info("Card {} balance slots changed from {} to {}", card.getId(), current, slots);
+    }
+
+    /** Периодически собирает слоты всех карт с разделённым балансом, каждую карту — своей транзакцией. */
+    @Scheduled(fixedDelayString = "${card.balance-slots.consolidate-interval-ms:60000}")
+    public void consolidateAll() {
+        long afterId = 0L;
+        int cards = 0;
+        long total = 0;
+        List<Long> ids;
+        do {
+            ids = cardRepository.findSlottedIdsAfter(afterId, Limit.of(consolidateBatchSize));
+            for (Long id : ids) {
+                try {
+                    total += transactionTemplate.execute(status -> consolidate(id));
+                    cards++;
+                } catch (ConcurrencyFailureException e) {
+                    // Карта занята переводом — соберём на следующем проходе
+                    logger.warn("Skipping balance slot consolidation for card {}: {}", id, e.getMessage());
+                }
+            }
+            if (!ids.isEmpty()) {
+                afterId = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == consolidateBatchSize);
+        if (total != 0) {
+            logger.info("Consolidated {} from balance slots of {} cards", total, cards);
+        }
+    }
+
+    // Сбрасывает кэш числа слотов, если он разошёлся с базой (слоты включили на другом экземпляре)
+    public void invalidate(Long cardId) {
+        slotCounts.invalidate(cardId);
+    }
+
+    // Номер слота для зачислений текущего потока; -1 — у карты нет слотов
+    private int slotOf(Long cardId) {
+        int slots = slotCount(cardId);
+        return slots == 0 ? -1 : (int) (Thread.currentThread().threadId() % slots);
+    }
+
+    private int slotCount(Long cardId) {
+        return slotCounts.get(cardId, id -> cardRepository.findBalanceSlotsById(id).orElse(0));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardExpiryRepository.ExpiryKey;
+import com.example.bankcards.repository.CardRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Переводит в EXPIRED карты с прошедшим сроком: createCard и updateCard делают это только для своей карты.
+ * Обход идёт порциями по ix_cards_expiration, каждая порция — отдельная короткая транзакция, между
+ * порциями пауза, чтобы не занимать соединения и блокировки строк, нужные переводам.
+ * В кластере проход выполняет один инстанс: на PostgreSQL он идёт под pg_try_advisory_lock,
+ * остальные пропускают запуск. Плановый проход идёт в своём потоке: у планировщика Spring Boot
+ * один поток, и многоминутный проход задержал бы опрос отзывов токенов и остальные @Scheduled-задачи.
+ */
+@Component
+public class CardExpirySweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardExpirySweeper.class);
+
+    public record SweepStats(boolean running, long runs, long skipped, long currentRunExpired,
+                             long lastRunExpired, long lastRunDurationMs, long totalExpired) {}
+
+    private final CardRepository cardRepository;
+    private final CardStatusRegistry cardStatusRegistry;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pauseMs;
+    private final long lockKey;
+
+    private final ExecutorService sweepExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-expiry-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong currentRunExpired = new AtomicLong();
+    private final AtomicLong totalExpired = new AtomicLong();
+    private volatile long lastRunExpired;
+    private volatile long lastRunDurationMs;
+
+    public CardExpirySweeper(CardRepository cardRepository, CardStatusRegistry cardStatusRegistry,
+                             DataSource dataSource, PlatformTransactionManager transactionManager,
+                             @Value("${card.expiry-sweeper.enabled:true}") boolean enabled,
+                             @Value("${card.expiry-sweeper.batch-size:1000}") int batchSize,
+                             @Value("${card.expiry-sweeper.pause-ms:100}") long pauseMs,
+                             @Value("${card.expiry-sweeper.lock-key:7310585200314269001}") long lockKey) {
+        this.cardRepository = cardRepository;
+        this.cardStatusRegistry = cardStatusRegistry;
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.lockKey = lockKey;
+    }
+
+    @Scheduled(fixedDelayString = "${card.expiry-sweeper.interval-ms:3600000}",
+            initialDelayString = "${card.expiry-sweeper.initial-delay-ms:60000}")
+    public void scheduledSweep() {
+        // Идущий проход не ставим в очередь: следующий запуск будет через interval-ms после этого
+        if (enabled && !running.get()) {
+            sweepExecutor.execute(this::sweep);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweepExecutor.shutdownNow();
+    }
+
+    /**
+     * Один проход; возвращает число карт, переведённых в EXPIRED (0, если проход выполняет другой инстанс).
+     */
+    public long sweep() {
+        if (!running.compareAndSet(false, true)) {
+            skipped.incrementAndGet();
+            return 0;
+        }
+        try (Connection lockConnection = dataSource.getConnection()) {
+            boolean postgres = lockConnection.getMetaData().getDatabaseProductName().equals("PostgreSQL");
+            if (postgres && !advisoryLock(lockConnection, "pg_try_advisory_lock")) {
+                skipped.incrementAndGet();
+                logger.debug("Card expiry sweep skipped, another instance holds the lock");
+                return 0;
+            }
+            try {
+                return sweepChunks();
+            } finally {
+                if (postgres) {
+                    advisoryLock(lockConnection, "pg_advisory_unlock");
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Card expiry sweep failed: {}", e.getMessage());
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public SweepStats stats() {
+        return new SweepStats(running.get(), runs.get(), skipped.get(), currentRunExpired.get(),
+                lastRunExpired, lastRunDurationMs, totalExpired.get());
+    }
+
+    private long sweepChunks() {
+        long started = System.nanoTime();
+        // Как в createCard: карта истекает в сам день expiration
+        LocalDate before = LocalDate.now().plusDays(1);
+        Long expiredStatusId = cardStatusRegistry.get(CardStatus.Code.EXPIRED).getId();
+        currentRunExpired.set(0);
+
+        ExpiryKey after = null;
+        List<ExpiryKey> keys;
+        do {
+            keys = cardRepository.findExpiryKeys(before, expiredStatusId, after, batchSize);
+            if (keys.isEmpty()) {
+                break;
+            }
+            List<Long> ids = keys.stream().map(ExpiryKey::id).toList();
+            Integer expired = transactionTemplate.execute(status -> cardRepository.expireAll(ids, before, expiredStatusId));
+            currentRunExpired.addAndGet(expired == null ? 0 : expired);
+            after = keys.get(keys.size() - 1);
+        } while (keys.size() == batchSize && pause());
+
+        long expired = currentRunExpired.get();
+        lastRunExpired = expired;
+        lastRunDurationMs = (System.nanoTime() - started) / 1_000_000;
+        totalExpired.addAndGet(expired);
+        runs.incrementAndGet();
+        if (expired > 0) {
+            logger.info("Card expiry sweep: {} cards expired in {} ms", expired, lastRunDurationMs);
+        }
+        return expired;
+    }
+
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
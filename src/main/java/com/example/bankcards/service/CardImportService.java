@@ -0,0 +1,229 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardImportResponse;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardImportRepository.NewCard;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardNumberHasher;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый выпуск карт из CSV или NDJSON. Файл читается построчно: строка проверяется теми же
+ * ограничениями, что и CardDTO в POST /card, и копится в порцию. Для порции номера шифруются
+ * и хэшируются параллельно на всех ядрах, затем проверяются владельцы и занятые номера, и порция
+ * вставляется одним JDBC batch в своей транзакции. Ошибочные строки попадают в отчёт, остальные
+ * импортируются.
+ */
+@Service
+public class CardImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardImportService.class);
+
+    public enum Format { CSV, NDJSON }
+
+    public static final String CSV_HEADER = "number,ownerId,expiration,balance";
+
+    private static final String NUMBER_TAKEN = "Card with this number already exists";
+
+    private record Row(long line, CardDTO card) {}
+
+    private record PreparedRow(long line, NewCard card) {}
+
+    private final CardRepository cardRepository;
+    private final CardEncryptor cardEncryptor;
+    private final CardNumberHasher cardNumberHasher;
+    private final CardStatusRegistry cardStatusRegistry;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public CardImportService(CardRepository cardRepository, CardEncryptor cardEncryptor,
+                             CardNumberHasher cardNumberHasher, CardStatusRegistry cardStatusRegistry,
+                             Validator validator, ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${card.import.chunk-size:500}") int chunkSize,
+                             @Value("${card.import.max-errors:1000}") int maxErrors) {
+        this.cardRepository = cardRepository;
+        this.cardEncryptor = cardEncryptor;
+        this.cardNumberHasher = cardNumberHasher;
+        this.cardStatusRegistry = cardStatusRegistry;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    public CardImportResponse importCards(Format format, InputStream in) throws IOException {
+        CardImportResponse response = new CardImportResponse();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            lineNumber++;
+            if (header == null || !header.strip().equalsIgnoreCase(CSV_HEADER)) {
+                throw new IllegalArgumentException("CSV header must be: " + CSV_HEADER);
+            }
+        }
+
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                CardDTO card = format == Format.CSV ? parseCsv(line) : parseJson(line);
+                validate(card);
+                chunk.add(new Row(lineNumber, card));
+            } catch (IllegalArgumentException e) {
+                reject(response, lineNumber, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, response);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, response);
+        }
+        logger.info("Card import finished: {} imported, {} rejected", response.getImported(), response.getRejected());
+        return response;
+    }
+
+    private void importChunk(List<Row> rows, CardImportResponse response) {
+        // AES-GCM и HMAC — основная работа на строку, порядок строк parallelStream сохраняет
+        List<PreparedRow> prepared = rows.parallelStream().map(this::prepare).toList();
+
+        Set<Long> owners = cardRepository.findExistingOwnerIds(
+                prepared.stream().map(row -> row.card().ownerId()).collect(Collectors.toSet()));
+        Set<String> taken = cardRepository.findExistingNumberHashes(
+                prepared.stream().map(row -> row.card().numberHash()).toList());
+        Set<String> seen = new HashSet<>();
+        List<PreparedRow> accepted = new ArrayList<>(prepared.size());
+        for (PreparedRow row : prepared) {
+            if (!owners.contains(row.card().ownerId())) {
+                reject(response, row.line(), "User not found: " + row.card().ownerId());
+            } else if (taken.contains(row.card().numberHash()) || !seen.add(row.card().numberHash())) {
+                reject(response, row.line(), NUMBER_TAKEN);
+            } else {
+                accepted.add(row);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    cardRepository.insertAll(accepted.stream().map(PreparedRow::card).toList()));
+            response.setImported(response.getImported() + accepted.size());
+        } catch (DataIntegrityViolationException e) {
+            // Номер заняли или владельца удалили после проверки — повторяем по одной строке,
+            // чтобы отклонить только конфликтующие
+            logger.warn("Card import chunk conflicted with concurrent changes, retrying row by row");
+            for (PreparedRow row : accepted) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> cardRepository.insertAll(List.of(row.card())));
+                    response.setImported(response.getImported() + 1);
+                } catch (DataIntegrityViolationException rowConflict) {
+                    reject(response, row.line(), NUMBER_TAKEN + " or owner was removed");
+                }
+            }
+        }
+    }
+
+    private PreparedRow prepare(Row row) {
+        CardDTO card = row.card();
+        CardStatus.Code status = card.getExpiration().before(new Date()) ? CardStatus.Code.EXPIRED : CardStatus.Code.ACTIVE;
+        return new PreparedRow(row.line(), new NewCard(
+                cardEncryptor.encrypt(card.getNumber()),
+                cardNumberHasher.hash(card.getNumber()),
+                com.example.bankcards.util.CardMapper.lastFour(card.getNumber()),
+                card.getOwnerId(),
+                card.getExpiration(),
+                cardStatusRegistry.get(status).getId(),
+                card.getBalance()));
+    }
+
+    private CardDTO parseCsv(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Expected 4 fields: " + CSV_HEADER);
+        }
+        CardDTO card = new CardDTO();
+        card.setNumber(fields[0].strip());
+        card.setOwnerId(parseLong("ownerId", fields[1]));
+        try {
+            // Полночь UTC — так же дату без времени разбирает Jackson в POST /card
+            card.setExpiration(Date.from(LocalDate.parse(fields[2].strip()).atStartOfDay(ZoneOffset.UTC).toInstant()));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("expiration: expected yyyy-MM-dd");
+        }
+        card.setBalance(parseLong("balance", fields[3]));
+        return card;
+    }
+
+    private CardDTO parseJson(String line) {
+        try {
+            return objectMapper.readValue(line, CardDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static Long parseLong(String field, String value) {
+        try {
+            return Long.valueOf(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + ": expected a number");
+        }
+    }
+
+    private void validate(CardDTO card) {
+        Set<ConstraintViolation<CardDTO>> violations = validator.validate(card);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+    }
+
+    private void reject(CardImportResponse response, long line, String error) {
+        response.setRejected(response.getRejected() + 1);
+        if (response.getErrors().size() < maxErrors) {
+            response.getErrors().add(new CardImportResponse.RowError(line, error));
+        }
+    }
+}
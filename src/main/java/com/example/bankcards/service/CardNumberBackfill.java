@@ -0,0 +1,160 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardMapper;
+import com.example.bankcards.util.CardNumberHasher;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Заполняет cards.number_hash и cards.number_last4 для карт, созданных до появления этих колонок.
+ * Идёт по id порциями, каждая порция в своей транзакции. Запускается при старте, но в своём потоке:
+ * старт не ждёт прохода, даже если заполнять нечего. В кластере проход выполняет один инстанс —
+ * на PostgreSQL под pg_try_advisory_lock, остальные его пропускают.
+ */
+@Component
+public class CardNumberBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardNumberBackfill.class);
+
+    private final CardRepository cardRepository;
+    private final CardEncryptor cardEncryptor;
+    private final CardNumberHasher cardNumberHasher;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long lockKey;
+
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-number-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CardNumberBackfill(CardRepository cardRepository, CardEncryptor cardEncryptor,
+                                  CardNumberHasher cardNumberHasher, DataSource dataSource,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${encryption.backfill.enabled:true}") boolean enabled,
+                                  @Value("${encryption.backfill.chunk-size:500}") int chunkSize,
+                                  @Value("${encryption.backfill.lock-key:7310585200314269002}") long lockKey) {
+        this.cardRepository = cardRepository;
+        this.cardEncryptor = cardEncryptor;
+        this.cardNumberHasher = cardNumberHasher;
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.lockKey = lockKey;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            logger.info("Card number backfill is disabled");
+            return;
+        }
+        backfillExecutor.execute(this::backfill);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    /**
+     * Один проход; возвращает число обработанных карт (0, если проход выполняет другой инстанс).
+     */
+    public long backfill() {
+        try (Connection lockConnection = dataSource.getConnection()) {
+            boolean postgres = lockConnection.getMetaData().getDatabaseProductName().equals("PostgreSQL");
+            if (postgres && !advisoryLock(lockConnection, "pg_try_advisory_lock")) {
+                logger.info("Card number backfill skipped, another instance holds the lock");
+                return 0;
+            }
+            try {
+                return backfillChunks();
+            } finally {
+                if (postgres) {
+                    advisoryLock(lockConnection, "pg_advisory_unlock");
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Card number backfill failed: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private long backfillChunks() {
+        long lastId = 0L;
+        long total = 0L;
+        while (true) {
+            long fromId = lastId;
+            List<Card> chunk = transactionTemplate.execute(status -> backfillChunk(fromId));
+            if (chunk == null || chunk.isEmpty()) {
+                break;
+            }
+            total += chunk.size();
+            lastId = chunk.get(chunk.size() - 1).getId();
+            logger.info("Card number backfill: processed {} cards, last id {}", total, lastId);
+        }
+        if (total > 0) {
+            logger.info("Card number backfill finished, {} cards processed", total);
+        }
+        return total;
+    }
+
+    private List<Card> backfillChunk(long fromId) {
+        List<Card> chunk = cardRepository.findNumberBackfillCandidates(fromId, PageRequest.of(0, chunkSize));
+        for (Card card : chunk) {
+            String number;
+            try {
+                number = cardEncryptor.decrypt(card.getNumber());
+            } catch (RuntimeException e) {
+                logger.error("Card number backfill: cannot decrypt card {}", card.getId());
+                continue;
+            }
+            if (card.getNumberLast4() == null && number.length() >= 4) {
+                card.setNumberLast4(CardMapper.lastFour(number));
+            }
+            if (card.getNumberHash() == null) {
+                String numberHash = cardNumberHasher.hash(number);
+                if (cardRepository.findByNumberHash(numberHash).isPresent()) {
+                    logger.error("Card number backfill: card {} duplicates an existing card number", card.getId());
+                } else {
+                    card.setNumberHash(numberHash);
+                }
+            }
+            cardRepository.save(card);
+        }
+        return chunk;
+    }
+
+    private boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
@@ -2,148 +2,329 @@ package com.example.bankcards.service;
 
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardSliceResponse;
+import com.example.bankcards.dto.CardView;
 import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferHistoryResponse;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.dto.TransferResult;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.Transfer;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.TooManyRequestsException;
+import com.example.bankcards.repository.CardBalanceBatchRepository.BalanceChange;
 import com.example.bankcards.repository.CardRepository;
-import com.example.bankcards.repository.CardStatusRepository;
 import com.example.bankcards.repository.TransferRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserCache;
+import com.example.bankcards.security.UserCache.CachedUser;
+import com.example.bankcards.util.CardCursor;
 import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardNumberHasher;
+import com.example.bankcards.util.TransferCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class CardService {
 
     private static final Logger logger = LoggerFactory.getLogger(CardService.class);
-    private static final String STATUS_ACTIVE = "ACTIVE";
-    private static final String STATUS_BLOCKED = "BLOCKED";
-    private static final String STATUS_EXPIRED = "EXPIRED";
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+    private static final int MAX_SCROLL_PAGE_SIZE = 100;
+    // Уникальный индекс номера карты из 007-add-card-number-hash
+    private static final String NUMBER_HASH_INDEX = "ux_cards_number_hash";
+
+    // Исход перевода для метрик: rejected — бизнес-отказ (400/403), busy — 429, error — всё остальное
+    enum TransferOutcome { COMPLETED, REPLAYED, REJECTED, BUSY, ERROR }
 
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
-    private final CardStatusRepository cardStatusRepository;
+    private final CardStatusRegistry cardStatusRegistry;
     private final TransferRepository transferRepository;
     private final CardEncryptor cardEncryptor;
+    private final CardNumberHasher cardNumberHasher;
+    private final UserCache userCache;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final TransferShardExecutor transferShardExecutor;
+    private final CardBalanceSlots cardBalanceSlots;
+    private final TransactionTemplate transactionTemplate;
+    private final int transferMaxAttempts;
+    private final long transferBackoffMs;
+    private final int transferBatchChunkSize;
+    private final Map<TransferOutcome, Timer> transferTimers = new EnumMap<>(TransferOutcome.class);
+    private final Timer listTimer;
 
     public CardService(CardRepository cardRepository, UserRepository userRepository,
-                       CardStatusRepository cardStatusRepository, TransferRepository transferRepository,
-                       CardEncryptor cardEncryptor) {
+                       CardStatusRegistry cardStatusRegistry, TransferRepository transferRepository,
+                       CardEncryptor cardEncryptor, CardNumberHasher cardNumberHasher, UserCache userCache,
+                       IdempotencyKeyStore idempotencyKeyStore, TransferShardExecutor transferShardExecutor,
+                       CardBalanceSlots cardBalanceSlots, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${transfer.retry.max-attempts:5}") int transferMaxAttempts,
+                       @Value("${transfer.retry.backoff-ms:10}") long transferBackoffMs,
+                       @Value("${transfer.batch.chunk-size:500}") int transferBatchChunkSize) {
         this.cardRepository = cardRepository;
         this.userRepository = userRepository;
-        this.cardStatusRepository = cardStatusRepository;
+        this.cardStatusRegistry = cardStatusRegistry;
         this.transferRepository = transferRepository;
         this.cardEncryptor = cardEncryptor;
+        this.cardNumberHasher = cardNumberHasher;
+        this.userCache = userCache;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.transferShardExecutor = transferShardExecutor;
+        this.cardBalanceSlots = cardBalanceSlots;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transferMaxAttempts = transferMaxAttempts;
+        this.transferBackoffMs = transferBackoffMs;
+        this.transferBatchChunkSize = transferBatchChunkSize;
+        for (TransferOutcome outcome : TransferOutcome.values()) {
+            transferTimers.put(outcome, Timer.builder("card.transfer")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.listTimer = Timer.builder("card.list").register(meterRegistry);
+        // Групповая транзакция шарда блокирует карты так же, как часть пакетного перевода
+        transferShardExecutor.setGroupLock(this::lockTransferCards);
     }
 
     @Transactional
     public CardResponse createCard(@Valid CardDTO cardDTO) {
         logger.info("Creating card for ownerId: {}", cardDTO.getOwnerId());
+        String numberHash = cardNumberHasher.hash(cardDTO.getNumber());
+        requireNumberNotTaken(numberHash, null);
+
         Card card = new Card();
         card.setNumber(cardEncryptor.encrypt(cardDTO.getNumber()));
+        card.setNumberHash(numberHash);
+        card.setNumberLast4(com.example.bankcards.util.CardMapper.lastFour(cardDTO.getNumber()));
         card.setOwner(requireUserById(cardDTO.getOwnerId()));
         card.setExpiration(cardDTO.getExpiration());
         card.setBalance(cardDTO.getBalance());
 
         // Установка статуса
-        CardStatus targetStatus = requireStatus(STATUS_ACTIVE);
+        CardStatus targetStatus = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
         if (cardDTO.getExpiration().before(new Date())) {
-            targetStatus = requireStatus(STATUS_EXPIRED);
+            targetStatus = cardStatusRegistry.get(CardStatus.Code.EXPIRED);
         }
         card.setStatus(targetStatus);
 
-        Card savedCard = cardRepository.save(card);
-        // Маскируем только для ответа, не перетирая значение в сущности
-        String masked = cardEncryptor.maskCardNumber(savedCard.getNumber());
+        Card savedCard = saveWithUniqueNumber(card);
         logger.info("Card created with ID: {}", savedCard.getId());
-        return com.example.bankcards.util.CardMapper.toResponse(savedCard, masked);
+        return toResponse(savedCard);
     }
 
     @Transactional(readOnly = true)
-    public Page<CardResponse> getCards(String status, String owner, Pageable pageable, String username) {
-        logger.info("Fetching cards for user: {}, status: {}, owner: {}", username, status, owner);
-        User currentUser = requireUserByUsername(username);
-
-        boolean isAdmin = currentUser.getRole() == User.Role.ADMIN;
-        Page<Card> cards;
+    public Page<CardResponse> getCards(CardStatus.Code status, String owner, Pageable pageable, String username) {
+        return listTimer.record(() -> doGetCards(status, owner, pageable, username));
+    }
 
-        if (isAdmin) {
-            // ADMIN может фильтровать по статусу и владельцу
-            if (status != null && owner != null) {
-                User filterOwner = requireUserByUsername(owner);
-                CardStatus filterStatus = requireStatus(status);
-                cards = cardRepository.findByStatusAndOwner(filterStatus, filterOwner, pageable);
-            } else if (status != null) {
-                CardStatus filterStatus = requireStatus(status);
-                cards = cardRepository.findByStatus(filterStatus, pageable);
-            } else if (owner != null) {
-                User filterOwner = requireUserByUsername(owner);
-                cards = cardRepository.findByOwner(filterOwner, pageable);
-            } else {
-                cards = cardRepository.findAll(pageable);
-            }
+    private Page<CardResponse> doGetCards(CardStatus.Code status, String owner, Pageable pageable, String username) {
+        logger.info("Fetching cards for user: {}, status: {}, owner: {}", username, status, owner);
+        CardFilter filter = resolveFilter(status, owner, requireUserByUsername(username));
+
+        Page<CardView> cards;
+        if (filter.ownerId() != null && filter.statusId() != null) {
+            cards = cardRepository.findViewsByOwnerAndStatus(filter.ownerId(), filter.statusId(), pageable);
+        } else if (filter.statusId() != null) {
+            cards = cardRepository.findViewsByStatus(filter.statusId(), pageable);
+        } else if (filter.ownerId() != null) {
+            cards = cardRepository.findViewsByOwner(filter.ownerId(), pageable);
         } else {
-            // USER видит только свои карты
-            if (status != null) {
-                CardStatus filterStatus = requireStatus(status);
-                cards = cardRepository.findByOwnerAndStatus(currentUser, filterStatus, pageable);
-            } else {
-                cards = cardRepository.findByOwner(currentUser, pageable);
-            }
+            cards = cardRepository.findViews(pageable);
         }
 
         // Маскирование номеров карт
         logger.info("Returning {} cards for user: {}", cards.getTotalElements(), username);
-        return cards.map(c -> com.example.bankcards.util.CardMapper.toResponse(c, cardEncryptor.maskCardNumber(c.getNumber())));
+        return cards.map(this::toResponse);
+    }
+
+    /**
+     * Список карт по курсору (keyset по id) — стоимость страницы не зависит от её глубины.
+     * Фильтры и права те же, что у {@link #getCards}.
+     */
+    @Transactional(readOnly = true)
+    public CardSliceResponse scrollCards(CardStatus.Code status, String owner, String cursor, int size, String username) {
+        logger.info("Scrolling cards for user: {}, status: {}, owner: {}", username, status, owner);
+        if (size < 1 || size > MAX_SCROLL_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SCROLL_PAGE_SIZE);
+        }
+        CardFilter filter = resolveFilter(status, owner, requireUserByUsername(username));
+        Long afterId = cursor == null ? 0L : CardCursor.decode(cursor).id();
+
+        // На одну запись больше, чтобы понять, есть ли следующая страница
+        Limit limit = Limit.of(size + 1);
+        List<CardView> cards;
+        if (filter.ownerId() != null && filter.statusId() != null) {
+            cards = cardRepository.scrollViewsByOwnerAndStatus(filter.ownerId(), filter.statusId(), afterId, limit);
+        } else if (filter.statusId() != null) {
+            cards = cardRepository.scrollViewsByStatus(filter.statusId(), afterId, limit);
+        } else if (filter.ownerId() != null) {
+            cards = cardRepository.scrollViewsByOwner(filter.ownerId(), afterId, limit);
+        } else {
+            cards = cardRepository.scrollViews(afterId, limit);
+        }
+
+        String nextCursor = null;
+        if (cards.size() > size) {
+            cards = cards.subList(0, size);
+            nextCursor = new CardCursor(cards.get(size - 1).id()).encode();
+        }
+        logger.info("Returning {} cards for user: {}", cards.size(), username);
+        return new CardSliceResponse(cards.stream().map(this::toResponse).toList(), nextCursor);
+    }
+
+    private record CardFilter(Long ownerId, Long statusId) {}
+
+    private CardFilter resolveFilter(CardStatus.Code status, String owner, CachedUser currentUser) {
+        Long statusId = status == null ? null : cardStatusRegistry.get(status).getId();
+        if (currentUser.role() == User.Role.ADMIN) {
+            // ADMIN может фильтровать по статусу и владельцу
+            Long ownerId = owner == null ? null : requireUserByUsername(owner).id();
+            return new CardFilter(ownerId, statusId);
+        }
+        // USER видит только свои карты
+        return new CardFilter(currentUser.id(), statusId);
     }
 
     @Transactional(readOnly = true)
     public CardResponse getCardById(Long id, String username) {
         logger.info("Fetching card with ID: {} for user: {}", id, username);
-        Card card = requireCardById(id);
+        CardView card = cardRepository.findViewById(id)
+                .orElseThrow(() -> {
+                    logger.error("Card not found: {}", id);
+                    return new IllegalArgumentException("Card not found: " + id);
+                });
 
-        User currentUser = requireUserByUsername(username);
+        CachedUser currentUser = requireUserByUsername(username);
 
-        if (currentUser.getRole() != User.Role.ADMIN && !card.getOwner().getId().equals(currentUser.getId())) {
+        if (currentUser.role() != User.Role.ADMIN && !card.ownerId().equals(currentUser.id())) {
             logger.error("Access denied: Card {} does not belong to user {}", id, username);
             throw new SecurityException("Access denied: Card does not belong to user");
         }
 
-        String masked = cardEncryptor.maskCardNumber(card.getNumber());
         logger.info("Returning card with ID: {}", id);
-        return com.example.bankcards.util.CardMapper.toResponse(card, masked);
+        return toResponse(card);
+    }
+
+    /**
+     * История переводов карты (входящие и исходящие), от новых к старым. Keyset-пагинация по
+     * (created_at, id): каждая страница — два индексных запроса с LIMIT, без OFFSET и COUNT(*).
+     */
+    @Transactional(readOnly = true)
+    public TransferHistoryResponse getTransferHistory(Long cardId, String cursor, int size, String username) {
+        logger.info("Fetching transfer history for card {} by user: {}", cardId, username);
+        if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
+        Card card = requireCardById(cardId);
+        CachedUser currentUser = requireUserByUsername(username);
+
+        if (currentUser.role() != User.Role.ADMIN && !card.getOwner().getId().equals(currentUser.id())) {
+            logger.error("Access denied: Card {} does not belong to user {}", cardId, username);
+            throw new SecurityException("Access denied: Card does not belong to user");
+        }
+
+        // На одну запись больше, чтобы понять, есть ли следующая страница
+        Limit limit = Limit.of(size + 1);
+        List<TransferResponse> outgoing;
+        List<TransferResponse> incoming;
+        if (cursor == null) {
+            outgoing = transferRepository.findOutgoing(cardId, limit);
+            incoming = transferRepository.findIncoming(cardId, limit);
+        } else {
+            TransferCursor after = TransferCursor.decode(cursor);
+            outgoing = transferRepository.findOutgoingAfter(cardId, after.createdAt(), after.id(), limit);
+            incoming = transferRepository.findIncomingAfter(cardId, after.createdAt(), after.id(), limit);
+        }
+
+        List<TransferResponse> merged = new ArrayList<>(outgoing.size() + incoming.size());
+        merged.addAll(outgoing);
+        merged.addAll(incoming);
+        merged.sort(Comparator.comparing(TransferResponse::getCreatedAt)
+                .thenComparing(TransferResponse::getId).reversed());
+
+        String nextCursor = null;
+        if (merged.size() > size) {
+            merged = merged.subList(0, size);
+            TransferResponse last = merged.get(size - 1);
+            nextCursor = new TransferCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        logger.info("Returning {} transfers for card {}", merged.size(), cardId);
+        return new TransferHistoryResponse(List.copyOf(merged), nextCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public CardResponse findCardByNumber(String number) {
+        logger.info("Looking up card by number");
+        Card card = cardRepository.findByNumberHash(cardNumberHasher.hash(number))
+                .orElseThrow(() -> {
+                    logger.error("Card not found by number");
+                    return new IllegalArgumentException("Card not found");
+                });
+
+        logger.info("Returning card with ID: {}", card.getId());
+        return toResponse(card);
     }
 
     @Transactional
     public CardResponse updateCard(Long id, @Valid CardDTO cardDTO) {
         logger.info("Updating card with ID: {}", id);
         Card card = requireCardById(id);
+        String numberHash = cardNumberHasher.hash(cardDTO.getNumber());
+        requireNumberNotTaken(numberHash, id);
 
         card.setNumber(cardEncryptor.encrypt(cardDTO.getNumber()));
+        card.setNumberHash(numberHash);
+        card.setNumberLast4(com.example.bankcards.util.CardMapper.lastFour(cardDTO.getNumber()));
         User owner = requireUserById(cardDTO.getOwnerId());
         card.setOwner(owner);
         card.setExpiration(cardDTO.getExpiration());
+        // Баланс задаётся целиком: слоты собираются в cards.balance и перезаписываются вместе с ним
+        if (card.getBalanceSlots() > 0) {
+            cardBalanceSlots.consolidate(id);
+            card.setSlotBalance(0L);
+        }
         card.setBalance(cardDTO.getBalance());
 
         if (cardDTO.getExpiration().before(new Date())) {
-            CardStatus expiredStatus = requireStatus(STATUS_EXPIRED);
+            CardStatus expiredStatus = cardStatusRegistry.get(CardStatus.Code.EXPIRED);
             card.setStatus(expiredStatus);
         }
 
-        Card updatedCard = cardRepository.save(card);
-        String masked = cardEncryptor.maskCardNumber(updatedCard.getNumber());
+        Card updatedCard = saveWithUniqueNumber(card);
         logger.info("Card updated with ID: {}", id);
-        return com.example.bankcards.util.CardMapper.toResponse(updatedCard, masked);
+        return toResponse(updatedCard);
     }
 
     @Transactional
@@ -154,52 +335,342 @@ public class CardService {
         logger.info("Card deleted with ID: {}", id);
     }
 
-    @Transactional
+    /**
+     * Перевод между картами пользователя. Баланс меняется условными UPDATE (списание проверяет
+     * владельца, статус и остаток, зачисление — владельца и статус), строки обновляются в порядке
+     * возрастания id, поэтому встречные переводы не дают дедлока. Если условие не выполнено,
+     * причина определяется по текущему состоянию карты и транзакция откатывается.
+     * При конфликте блокировок транзакция повторяется с экспоненциальной задержкой и jitter.
+     */
     public void transfer(@Valid TransferDTO transferDTO, String username) {
+        transfer(transferDTO, username, null);
+    }
+
+    /**
+     * Перевод с ключом Idempotency-Key: повтор с тем же ключом и телом не применяется второй раз.
+     * Недавние ключи отвечаются из памяти, остальные — по таблице в транзакции перевода.
+     * Ключ сохраняется только для применённого перевода; отклонённый можно повторить с тем же ключом.
+     */
+    public void transfer(@Valid TransferDTO transferDTO, String username, String idempotencyKey) {
+        long start = System.nanoTime();
+        TransferOutcome outcome = TransferOutcome.ERROR;
+        try {
+            outcome = doTransferRequest(transferDTO, username, idempotencyKey);
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            transferTimers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static TransferOutcome outcomeOf(RuntimeException e) {
+        if (e instanceof TooManyRequestsException || e instanceof CannotCreateTransactionException cannotCreate
+                && cannotCreate.getMostSpecificCause() instanceof TooManyRequestsException) {
+            return TransferOutcome.BUSY;
+        }
+        if (e instanceof IllegalArgumentException || e instanceof IllegalStateException || e instanceof SecurityException) {
+            return TransferOutcome.REJECTED;
+        }
+        return TransferOutcome.ERROR;
+    }
+
+    private TransferOutcome doTransferRequest(TransferDTO transferDTO, String username, String idempotencyKey) {
         logger.info("Initiating transfer from card {} to card {} for user: {}",
                 transferDTO.getFromCardId(), transferDTO.getToCardId(), username);
-        User currentUser = requireUserByUsername(username);
+        if (transferDTO.getFromCardId().equals(transferDTO.getToCardId())) {
+            logger.error("Transfer failed: source and destination card {} are the same", transferDTO.getFromCardId());
+            throw new IllegalArgumentException("Source and destination cards must differ");
+        }
+        if (idempotencyKey != null) {
+            IdempotencyKeyStore.validate(idempotencyKey);
+        }
+        CachedUser currentUser = requireUserByUsername(username);
+        String fingerprint = transferDTO.getFromCardId() + ":" + transferDTO.getToCardId() + ":" + transferDTO.getAmount();
+
+        if (idempotencyKey != null) {
+            Optional<IdempotencyKeyStore.Outcome> replayed =
+                    idempotencyKeyStore.recall(currentUser.id(), idempotencyKey, fingerprint);
+            if (replayed.isPresent()) {
+                logger.info("Transfer {} replayed for idempotency key of user: {}", replayed.get().transferId(), username);
+                return TransferOutcome.REPLAYED;
+            }
+        }
 
-        Card fromCard = requireCardById(transferDTO.getFromCardId());
-        Card toCard = requireCardById(transferDTO.getToCardId());
+        Supplier<Long> apply = () -> applyTransfer(transferDTO, currentUser, idempotencyKey, fingerprint);
+        Supplier<Long> applyAlone = () -> withTransferRetry(() -> transactionTemplate.execute(status -> apply.get()));
+        Long transferId = transferShardExecutor.isEnabled()
+                ? transferShardExecutor.execute(transferDTO.getFromCardId(), transferDTO.getToCardId(), apply, applyAlone)
+                : applyAlone.get();
 
-        // Проверка, что обе карты принадлежат текущему пользователю
-        if (!fromCard.getOwner().getId().equals(currentUser.getId()) ||
-                !toCard.getOwner().getId().equals(currentUser.getId())) {
-            logger.error("Access denied: Cards must belong to user {}", username);
-            throw new SecurityException("Access denied: Cards must belong to the user");
-        }
+        logger.info("Transfer {} completed from card {} to card {}",
+                transferId, transferDTO.getFromCardId(), transferDTO.getToCardId());
+        return TransferOutcome.COMPLETED;
+    }
 
-        // Проверка статуса карт
-        CardStatus activeStatus = requireStatus(STATUS_ACTIVE);
-        if (!fromCard.getStatus().getName().equals("ACTIVE") ||
-                !toCard.getStatus().getName().equals("ACTIVE")) {
-            logger.error("Transfer failed: Both cards must be active");
-            throw new IllegalStateException("Both cards must be active for transfer");
+    /**
+     * Пакетный перевод. Элементы применяются частями по transfer.batch.chunk-size, каждая часть —
+     * одна транзакция: списания, зачисления и вставки transfers уходят JDBC-батчами.
+     * Внутри части сначала выполняются все списания, затем все зачисления, поэтому элемент
+     * не может потратить деньги, зачисленные другим элементом той же части.
+     * Ошибка элемента не прерывает пакет — для каждого элемента возвращается свой результат.
+     */
+    public List<TransferResult> transferBatch(List<TransferDTO> transfers, String username) {
+        logger.info("Initiating batch of {} transfers for user: {}", transfers.size(), username);
+        CachedUser currentUser = requireUserByUsername(username);
+
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int offset = 0; offset < transfers.size(); offset += transferBatchChunkSize) {
+            List<TransferDTO> chunk = transfers.subList(offset, Math.min(offset + transferBatchChunkSize, transfers.size()));
+            int chunkOffset = offset;
+            results.addAll(withTransferRetry(() -> transactionTemplate.execute(
+                    status -> doTransferBatch(chunk, chunkOffset, currentUser))));
         }
 
-        // Проверка баланса
-        if (fromCard.getBalance() < transferDTO.getAmount()) {
-            logger.error("Transfer failed: Insufficient balance on card {}", transferDTO.getFromCardId());
-            throw new IllegalStateException("Insufficient balance on source card");
+        logger.info("Batch completed: {} of {} transfers applied for user: {}",
+                results.stream().filter(r -> r.getStatus() == TransferResult.Status.COMPLETED).count(),
+                transfers.size(), username);
+        return results;
+    }
+
+    private <T> T withTransferRetry(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= transferMaxAttempts) {
+                    logger.error("Transfer failed after {} attempts: {}", attempt, e.getMessage());
+                    throw new IllegalStateException("Transfer failed due to concurrent updates, please retry");
+                }
+                logger.warn("Transfer attempt {} hit a lock conflict, retrying: {}", attempt, e.getMessage());
+                backoff(attempt);
+            }
         }
+    }
 
-        // Выполнение перевода
-        fromCard.setBalance(fromCard.getBalance() - transferDTO.getAmount());
-        toCard.setBalance(toCard.getBalance() + transferDTO.getAmount());
+    // Вызывается внутри транзакции: своей или групповой транзакции шарда
+    private Long applyTransfer(TransferDTO transferDTO, CachedUser currentUser, String idempotencyKey, String fingerprint) {
+        if (idempotencyKey != null) {
+            Optional<IdempotencyKeyStore.Outcome> applied =
+                    idempotencyKeyStore.find(currentUser.id(), idempotencyKey, fingerprint);
+            if (applied.isPresent()) {
+                return applied.get().transferId();
+            }
+        }
+        Long transferId = doTransfer(transferDTO, currentUser);
+        if (idempotencyKey != null) {
+            idempotencyKeyStore.record(currentUser.id(), idempotencyKey, fingerprint, transferId);
+        }
+        return transferId;
+    }
 
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
+    private Long doTransfer(TransferDTO transferDTO, CachedUser currentUser) {
+        Long fromId = transferDTO.getFromCardId();
+        Long toId = transferDTO.getToCardId();
+        Long amount = transferDTO.getAmount();
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        // Порядок блокировок общий с консолидацией: строки cards по возрастанию id, затем слоты
+        if (cardBalanceSlots.isSlotted(fromId) || cardBalanceSlots.isSlotted(toId)) {
+            lockTransferCards(List.of(fromId), List.of(toId));
+            debit(fromId, currentUser, active, amount);
+            credit(toId, currentUser, active, amount);
+        } else if (fromId < toId) {
+            debit(fromId, currentUser, active, amount);
+            credit(toId, currentUser, active, amount);
+        } else {
+            credit(toId, currentUser, active, amount);
+            debit(fromId, currentUser, active, amount);
+        }
 
         // Сохранение записи о переводе
         Transfer transfer = new Transfer();
-        transfer.setFromCard(fromCard);
-        transfer.setToCard(toCard);
-        transfer.setAmount(transferDTO.getAmount());
+        transfer.setFromCard(cardRepository.getReferenceById(fromId));
+        transfer.setToCard(cardRepository.getReferenceById(toId));
+        transfer.setAmount(amount);
         transferRepository.save(transfer);
+        return transfer.getId();
+    }
+
+    private List<TransferResult> doTransferBatch(List<TransferDTO> chunk, int offset, CachedUser currentUser) {
+        TransferResult[] results = new TransferResult[chunk.size()];
+        Long activeId = cardStatusRegistry.get(CardStatus.Code.ACTIVE).getId();
+
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferDTO item = chunk.get(i);
+            if (item.getFromCardId().equals(item.getToCardId())) {
+                results[i] = TransferResult.rejected(offset + i, "Source and destination cards must differ");
+            } else {
+                pending.add(i);
+            }
+        }
+
+        // Все карты части блокируются заранее, в общем порядке; слоты карт списания при этом собираются,
+        // поэтому списание батчем видит весь баланс в cards.balance
+        lockTransferCards(pending.stream().map(i -> chunk.get(i).getFromCardId()).toList(),
+                pending.stream().map(i -> chunk.get(i).getToCardId()).toList());
+        List<Integer> debitOrder = sortedBy(pending, i -> chunk.get(i).getFromCardId());
+        int[] debited = debitOrder.isEmpty() ? new int[0] : cardRepository.debitAll(currentUser.id(), activeId,
+                balanceChanges(chunk, debitOrder, TransferDTO::getFromCardId));
+        List<Integer> debitedItems = new ArrayList<>();
+        for (int k = 0; k < debitOrder.size(); k++) {
+            int i = debitOrder.get(k);
+            if (debited[k] == 0) {
+                TransferDTO item = chunk.get(i);
+                results[i] = TransferResult.rejected(offset + i,
+                        rejectionMessage(item.getFromCardId(), currentUser, item.getAmount()));
+            } else {
+                debitedItems.add(i);
+            }
+        }
+
+        // Карты со слотами получают зачисления в слоты (по возрастанию id карты), остальные — батчем в cards.balance
+        List<Integer> creditOrder = sortedBy(debitedItems, i -> chunk.get(i).getToCardId());
+        int[] credited = new int[creditOrder.size()];
+        List<Integer> mainCredits = new ArrayList<>();
+        for (int k = 0; k < creditOrder.size(); k++) {
+            TransferDTO item = chunk.get(creditOrder.get(k));
+            if (cardBalanceSlots.credit(item.getToCardId(), currentUser.id(), activeId, item.getAmount())) {
+                credited[k] = 1;
+            } else {
+                mainCredits.add(k);
+            }
+        }
+        if (!mainCredits.isEmpty()) {
+            int[] mainCredited = cardRepository.creditAll(currentUser.id(), activeId,
+                    balanceChanges(chunk, mainCredits.stream().map(creditOrder::get).toList(), TransferDTO::getToCardId));
+            for (int m = 0; m < mainCredits.size(); m++) {
+                credited[mainCredits.get(m)] = mainCredited[m];
+            }
+        }
+        List<Integer> refunds = new ArrayList<>();
+        List<Integer> completed = new ArrayList<>();
+        for (int k = 0; k < creditOrder.size(); k++) {
+            int i = creditOrder.get(k);
+            if (credited[k] == 0) {
+                results[i] = TransferResult.rejected(offset + i,
+                        rejectionMessage(chunk.get(i).getToCardId(), currentUser, null));
+                refunds.add(i);
+            } else {
+                completed.add(i);
+            }
+        }
+        if (!refunds.isEmpty()) {
+            cardRepository.refundAll(balanceChanges(chunk, sortedBy(refunds, i -> chunk.get(i).getFromCardId()),
+                    TransferDTO::getFromCardId));
+        }
+
+        // Сохранение записей о переводах (id из пула последовательности, вставка батчем)
+        List<Transfer> transfers = new ArrayList<>(completed.size());
+        for (int i : completed) {
+            TransferDTO item = chunk.get(i);
+            Transfer transfer = new Transfer();
+            transfer.setFromCard(cardRepository.getReferenceById(item.getFromCardId()));
+            transfer.setToCard(cardRepository.getReferenceById(item.getToCardId()));
+            transfer.setAmount(item.getAmount());
+            transfers.add(transfer);
+        }
+        transferRepository.saveAll(transfers);
+        for (int k = 0; k < completed.size(); k++) {
+            int i = completed.get(k);
+            results[i] = TransferResult.completed(offset + i, transfers.get(k).getId());
+        }
+        return Arrays.asList(results);
+    }
 
-        logger.info("Transfer completed from card {} to card {}",
-                transferDTO.getFromCardId(), transferDTO.getToCardId());
+    /**
+     * Блокирует карты переводов одной транзакции (перевод, часть пакета, группа шарда) в порядке из
+     * CardBalanceSlotRepository: строки cards одним запросом по возрастанию id, затем слоты (слоты карт
+     * списания при этом переносятся в cards.balance). Строки карт со слотами, на которые только
+     * зачисляют, не блокируются: зачисление уходит в слот.
+     */
+    private void lockTransferCards(Collection<Long> debitCardIds, Collection<Long> creditCardIds) {
+        SortedSet<Long> cardIds = new TreeSet<>(debitCardIds);
+        creditCardIds.stream()
+                .filter(id -> !cardBalanceSlots.isSlotted(id))
+                .forEach(cardIds::add);
+        cardRepository.lockAll(cardIds);
+        cardBalanceSlots.lockForTransfer(debitCardIds, creditCardIds);
+    }
+
+    private static List<Integer> sortedBy(List<Integer> items, Function<Integer, Long> cardId) {
+        List<Integer> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparing(cardId));
+        return sorted;
+    }
+
+    private static List<BalanceChange> balanceChanges(List<TransferDTO> chunk, List<Integer> order,
+                                                      Function<TransferDTO, Long> cardId) {
+        return order.stream()
+                .map(i -> new BalanceChange(cardId.apply(chunk.get(i)), chunk.get(i).getAmount()))
+                .toList();
+    }
+
+    private String rejectionMessage(Long cardId, CachedUser currentUser, Long amount) {
+        try {
+            RuntimeException rejection = transferRejection(cardId, currentUser, amount);
+            if (rejection instanceof ConcurrencyFailureException concurrencyFailure) {
+                throw concurrencyFailure;
+            }
+            return rejection.getMessage();
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    // Слоты карты со слотами уже собраны в cards.balance вызывающим (lockTransferCards)
+    private void debit(Long cardId, CachedUser currentUser, CardStatus active, Long amount) {
+        if (cardRepository.debit(cardId, currentUser.id(), active, amount) == 0) {
+            throw transferRejection(cardId, currentUser, amount);
+        }
+    }
+
+    private void credit(Long cardId, CachedUser currentUser, CardStatus active, Long amount) {
+        if (cardBalanceSlots.credit(cardId, currentUser.id(), active.getId(), amount)) {
+            return;
+        }
+        if (cardRepository.credit(cardId, currentUser.id(), active, amount) == 0) {
+            throw transferRejection(cardId, currentUser, null);
+        }
+    }
+
+    // Определяет, какое условие перевода не выполнено; amount == null для зачисления
+    private RuntimeException transferRejection(Long cardId, CachedUser currentUser, Long amount) {
+        Card card = requireCardById(cardId);
+
+        if (!card.getOwner().getId().equals(currentUser.id())) {
+            logger.error("Access denied: Cards must belong to user {}", currentUser.username());
+            return new SecurityException("Access denied: Cards must belong to the user");
+        }
+        if (!cardStatusRegistry.is(card.getStatus(), CardStatus.Code.ACTIVE)) {
+            logger.error("Transfer failed: Both cards must be active");
+            return new IllegalStateException("Both cards must be active for transfer");
+        }
+        if (amount != null && card.getBalance() < amount && card.getTotalBalance() >= amount) {
+            // Кэш числа слотов устарел, и слоты не были собраны до списания — повтор соберёт их первым делом
+            cardBalanceSlots.invalidate(cardId);
+            logger.warn("Card {} has unconsolidated balance slots, retrying transfer", cardId);
+            return new ConcurrencyFailureException("Card " + cardId + " balance slots changed during transfer");
+        }
+        if (amount != null && card.getBalance() < amount) {
+            logger.error("Transfer failed: Insufficient balance on card {}", cardId);
+            return new IllegalStateException("Insufficient balance on source card");
+        }
+        // Состояние изменилось между UPDATE и чтением — пусть перевод повторится
+        logger.warn("Transfer condition on card {} changed concurrently", cardId);
+        return new ConcurrencyFailureException("Card " + cardId + " changed during transfer");
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = transferBackoffMs << Math.min(attempt - 1, 10);
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transfer interrupted", e);
+        }
     }
 
     @Transactional
@@ -207,33 +678,41 @@ public class CardService {
         logger.info("Requesting block for card {} by user: {}", id, username);
         Card card = requireCardById(id);
 
-        User currentUser = userRepository.findByUsername(username)
-                .orElseThrow(() -> {
-                    logger.error("User not found: {}", username);
-                    return new IllegalArgumentException("User not found: " + username);
-                });
+        CachedUser currentUser = requireUserByUsername(username);
 
-        if (!card.getOwner().getId().equals(currentUser.getId())) {
+        if (!card.getOwner().getId().equals(currentUser.id())) {
             logger.error("Access denied: Card {} does not belong to user {}", id, username);
             throw new SecurityException("Access denied: Card does not belong to user");
         }
 
-        if (!card.getStatus().getName().equals(STATUS_ACTIVE)) {
+        if (!cardStatusRegistry.is(card.getStatus(), CardStatus.Code.ACTIVE)) {
             logger.error("Block failed: Card {} is already blocked or expired", id);
             throw new IllegalStateException("Card is already blocked or expired");
         }
 
-        CardStatus blockedStatus = requireStatus(STATUS_BLOCKED);
+        CardStatus blockedStatus = cardStatusRegistry.get(CardStatus.Code.BLOCKED);
         card.setStatus(blockedStatus);
         cardRepository.save(card);
         logger.info("Card {} blocked successfully", id);
     }
 
+    /**
+     * Включает разделённый баланс карты с K слотами (0 — выключает). Для карт, на которые идёт
+     * много параллельных зачислений: они расходятся по слотам вместо одной строки cards.
+     */
+    @Transactional
+    public CardResponse setBalanceSlots(Long id, int slots) {
+        logger.info("Admin setting {} balance slots for card {}", slots, id);
+        Card card = requireCardById(id);
+        cardBalanceSlots.resize(card, slots);
+        return toResponse(card);
+    }
+
     @Transactional
     public void blockCardAdmin(Long id) {
         logger.info("Admin blocking card {}", id);
         Card card = requireCardById(id);
-        CardStatus blockedStatus = requireStatus(STATUS_BLOCKED);
+        CardStatus blockedStatus = cardStatusRegistry.get(CardStatus.Code.BLOCKED);
         card.setStatus(blockedStatus);
         cardRepository.save(card);
         logger.info("Card {} blocked by admin", id);
@@ -243,15 +722,30 @@ public class CardService {
     public void activateCardAdmin(Long id) {
         logger.info("Admin activating card {}", id);
         Card card = requireCardById(id);
-        CardStatus activeStatus = requireStatus(STATUS_ACTIVE);
+        CardStatus activeStatus = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
         card.setStatus(activeStatus);
         cardRepository.save(card);
         logger.info("Card {} activated by admin", id);
     }
 
     // Helpers
-    private User requireUserByUsername(String username) {
-        return userRepository.findByUsername(username)
+    private CardResponse toResponse(Card card) {
+        // Карты, ещё не обработанные CardNumberBackfill, маскируем через расшифровку
+        if (card.getNumberLast4() == null) {
+            return com.example.bankcards.util.CardMapper.toResponse(card, cardEncryptor.maskCardNumber(card.getNumber()));
+        }
+        return com.example.bankcards.util.CardMapper.toResponse(card);
+    }
+
+    private CardResponse toResponse(CardView card) {
+        if (card.numberLast4() == null) {
+            return com.example.bankcards.util.CardMapper.toResponse(card, cardEncryptor.maskCardNumber(card.number()));
+        }
+        return com.example.bankcards.util.CardMapper.toResponse(card);
+    }
+
+    private CachedUser requireUserByUsername(String username) {
+        return userCache.findByUsername(username)
                 .orElseThrow(() -> {
                     logger.error("User not found by username: {}", username);
                     return new IllegalArgumentException("User not found: " + username);
@@ -274,11 +768,26 @@ public class CardService {
                 });
     }
 
-    private CardStatus requireStatus(String statusName) {
-        return cardStatusRepository.findByName(statusName)
-                .orElseThrow(() -> {
-                    logger.error("Status not found: {}", statusName);
-                    return new IllegalArgumentException("Status not found: " + statusName);
+    // Проверка номера до записи не защищает от параллельного запроса с тем же номером:
+    // его отсекает уникальный индекс, и нарушение отвечается той же ошибкой, а не 500
+    private Card saveWithUniqueNumber(Card card) {
+        try {
+            return cardRepository.saveAndFlush(card);
+        } catch (DataIntegrityViolationException e) {
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains(NUMBER_HASH_INDEX)) {
+                throw e;
+            }
+            logger.error("Card number was taken concurrently");
+            throw new IllegalArgumentException("Card with this number already exists");
+        }
+    }
+
+    private void requireNumberNotTaken(String numberHash, Long cardId) {
+        cardRepository.findByNumberHash(numberHash)
+                .filter(existing -> !existing.getId().equals(cardId))
+                .ifPresent(existing -> {
+                    logger.error("Card number already used by card {}", existing.getId());
+                    throw new IllegalArgumentException("Card with this number already exists");
                 });
     }
 }
\ No newline at end of file
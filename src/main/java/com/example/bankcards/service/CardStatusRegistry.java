@@ -0,0 +1,66 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Справочник статусов карт (миграция 006), загружается один раз при старте.
+ * Статусы сравниваются по id, без запросов к card_status и без сравнения строк.
+ */
+@Component
+public class CardStatusRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardStatusRegistry.class);
+
+    private final Map<CardStatus.Code, CardStatus> byCode;
+    private final Map<Long, CardStatus.Code> codeById;
+
+    public CardStatusRegistry(CardStatusRepository cardStatusRepository) {
+        Map<CardStatus.Code, CardStatus> statuses = new EnumMap<>(CardStatus.Code.class);
+        Map<Long, CardStatus.Code> codes = new HashMap<>();
+        for (CardStatus status : cardStatusRepository.findAll()) {
+            CardStatus.Code code;
+            try {
+                code = CardStatus.Code.valueOf(status.getName());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring unknown card status in database: {}", status.getName());
+                continue;
+            }
+            statuses.put(code, status);
+            codes.put(status.getId(), code);
+        }
+        for (CardStatus.Code code : CardStatus.Code.values()) {
+            if (!statuses.containsKey(code)) {
+                logger.error("Card status {} is missing in card_status table", code);
+                throw new IllegalStateException("Card status " + code + " is missing in card_status table");
+            }
+        }
+        this.byCode = Collections.unmodifiableMap(statuses);
+        this.codeById = Collections.unmodifiableMap(codes);
+        logger.info("CardStatusRegistry loaded {} statuses", byCode.size());
+    }
+
+    public CardStatus get(CardStatus.Code code) {
+        return byCode.get(code);
+    }
+
+    public CardStatus.Code codeOf(CardStatus status) {
+        CardStatus.Code code = codeById.get(status.getId());
+        if (code == null) {
+            throw new IllegalStateException("Unknown card status id: " + status.getId());
+        }
+        return code;
+    }
+
+    public boolean is(CardStatus status, CardStatus.Code code) {
+        return status.getId().equals(byCode.get(code).getId());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Выгрузка всех карт и переводов для админа. Строки читаются курсором только вперёд (fetch size
+ * вместо загрузки результата целиком — PostgreSQL держит курсор только внутри транзакции),
+ * маскируются и сразу пишутся в поток: в памяти одновременно не больше одной порции fetch size.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String CARDS_SQL = "SELECT c.id, c.number_last4, " +
+            "CASE WHEN c.number_last4 IS NULL THEN c.number END AS number, " +
+            "u.username, c.expiration, s.name AS status, " +
+            "c.balance + CASE WHEN c.balance_slots > 0 THEN " +
+            "(SELECT COALESCE(SUM(b.balance), 0) FROM card_balance_slots b WHERE b.card_id = c.id) ELSE 0 END AS balance " +
+            "FROM cards c JOIN users u ON u.id = c.owner_id JOIN card_status s ON s.id = c.status_id " +
+            "ORDER BY c.id";
+    private static final String TRANSFERS_SQL = "SELECT id, from_card_id, to_card_id, amount, created_at " +
+            "FROM transfers ORDER BY id";
+
+    private static final String CARDS_CSV_HEADER = "id,cardNumber,owner,expiryDate,status,balance";
+    private static final String TRANSFERS_CSV_HEADER = "id,fromCardId,toCardId,amount,createdAt";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardEncryptor cardEncryptor;
+    // Поток ответа закрывает сервлет-контейнер, а не генератор
+    private final JsonFactory jsonFactory = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+
+    public ExportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                         CardEncryptor cardEncryptor,
+                         @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // read-only: при replicas.enabled выгрузка идёт с реплики
+        this.transactionTemplate.setReadOnly(true);
+        this.cardEncryptor = cardEncryptor;
+    }
+
+    public void exportCards(Format format, OutputStream out) throws IOException {
+        long rows = format == Format.CSV
+                ? exportCsv(out, CARDS_SQL, CARDS_CSV_HEADER, this::writeCardCsv)
+                : exportNdjson(out, CARDS_SQL, this::writeCardJson);
+        logger.info("Exported {} cards as {}", rows, format);
+    }
+
+    public void exportTransfers(Format format, OutputStream out) throws IOException {
+        long rows = format == Format.CSV
+                ? exportCsv(out, TRANSFERS_SQL, TRANSFERS_CSV_HEADER, this::writeTransferCsv)
+                : exportNdjson(out, TRANSFERS_SQL, this::writeTransferJson);
+        logger.info("Exported {} transfers as {}", rows, format);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter<T> {
+        void write(ResultSet rs, T target) throws SQLException, IOException;
+    }
+
+    private long exportNdjson(OutputStream out, String sql, RowWriter<JsonGenerator> rowWriter) throws IOException {
+        try (JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            // Строки разделяются переводом строки, а не пробелом по умолчанию
+            json.setRootValueSeparator(null);
+            return stream(sql, rs -> {
+                json.writeStartObject();
+                rowWriter.write(rs, json);
+                json.writeEndObject();
+                json.writeRaw('\n');
+            });
+        }
+    }
+
+    private long exportCsv(OutputStream out, String sql, String header, RowWriter<Writer> rowWriter) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        csv.write(header);
+        csv.write('\n');
+        long rows = stream(sql, rs -> {
+            rowWriter.write(rs, csv);
+            csv.write('\n');
+        });
+        csv.flush();
+        return rows;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private long stream(String sql, RowHandler handler) {
+        Long rows = transactionTemplate.execute(status -> {
+            long[] count = {0};
+            jdbcTemplate.query(sql, rs -> {
+                try {
+                    handler.handle(rs);
+                } catch (IOException e) {
+                    // Клиент оборвал соединение — курсор и транзакция закрываются
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+            return count[0];
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private void writeCardJson(ResultSet rs, JsonGenerator json) throws SQLException, IOException {
+        json.writeNumberField("id", rs.getLong("id"));
+        json.writeStringField("cardNumber", maskedNumber(rs));
+        json.writeStringField("owner", rs.getString("username"));
+        json.writeStringField("expiryDate", rs.getDate("expiration").toLocalDate().toString());
+        json.writeStringField("status", rs.getString("status"));
+        json.writeNumberField("balance", rs.getLong("balance"));
+    }
+
+    private void writeCardCsv(ResultSet rs, Writer csv) throws SQLException, IOException {
+        csv.write(Long.toString(rs.getLong("id")));
+        csv.write(',');
+        csv.write(maskedNumber(rs));
+        csv.write(',');
+        writeCsvField(csv, rs.getString("username"));
+        csv.write(',');
+        csv.write(rs.getDate("expiration").toLocalDate().toString());
+        csv.write(',');
+        writeCsvField(csv, rs.getString("status"));
+        csv.write(',');
+        csv.write(Long.toString(rs.getLong("balance")));
+    }
+
+    private void writeTransferJson(ResultSet rs, JsonGenerator json) throws SQLException, IOException {
+        json.writeNumberField("id", rs.getLong("id"));
+        json.writeNumberField("fromCardId", rs.getLong("from_card_id"));
+        json.writeNumberField("toCardId", rs.getLong("to_card_id"));
+        json.writeNumberField("amount", rs.getLong("amount"));
+        json.writeStringField("createdAt", rs.getTimestamp("created_at").toLocalDateTime().toString());
+    }
+
+    private void writeTransferCsv(ResultSet rs, Writer csv) throws SQLException, IOException {
+        csv.write(Long.toString(rs.getLong("id")));
+        csv.write(',');
+        csv.write(Long.toString(rs.getLong("from_card_id")));
+        csv.write(',');
+        csv.write(Long.toString(rs.getLong("to_card_id")));
+        csv.write(',');
+        csv.write(Long.toString(rs.getLong("amount")));
+        csv.write(',');
+        csv.write(rs.getTimestamp("created_at").toLocalDateTime().toString());
+    }
+
+    private String maskedNumber(ResultSet rs) throws SQLException {
+        String lastFour = rs.getString("number_last4");
+        // Карты, ещё не обработанные CardNumberBackfill, маскируем через расшифровку
+        return lastFour != null ? CardMapper.maskLastFour(lastFour) : cardEncryptor.maskCardNumber(rs.getString("number"));
+    }
+
+    private static void writeCsvField(Writer csv, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            csv.write(value);
+            return;
+        }
+        csv.write('"');
+        csv.write(value.replace("\"", "\"\""));
+        csv.write('"');
+    }
+}
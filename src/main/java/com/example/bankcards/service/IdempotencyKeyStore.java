@@ -0,0 +1,133 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Ключи Idempotency-Key для переводов. Источник истины — таблица idempotency_keys с уникальным
+ * (user_id, idem_key); запись делается в транзакции перевода, поэтому перевод и ключ фиксируются вместе.
+ * Перед таблицей — ограниченный LRU недавних ключей: повтор, пришедший на тот же инстанс,
+ * отвечается без обращения к БД. Просроченные ключи удаляются фоновыми порциями.
+ */
+@Component
+public class IdempotencyKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyKeyStore.class);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    public record Outcome(String fingerprint, Long transferId) {}
+
+    private record CacheKey(Long userId, String key) {}
+
+    private final IdempotencyKeyRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final int purgeBatchSize;
+    private final Cache<CacheKey, Outcome> recent;
+
+    public IdempotencyKeyStore(IdempotencyKeyRepository repository, PlatformTransactionManager transactionManager,
+                               @Value("${idempotency.ttl-ms:86400000}") long ttlMs,
+                               @Value("${idempotency.cache-size:10000}") long cacheSize,
+                               @Value("${idempotency.purge-batch-size:1000}") int purgeBatchSize) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.purgeBatchSize = purgeBatchSize;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public static void validate(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+    }
+
+    /** Результат из LRU, без обращения к БД. */
+    public Optional<Outcome> recall(Long userId, String key, String fingerprint) {
+        return Optional.ofNullable(recent.getIfPresent(new CacheKey(userId, key)))
+                .map(outcome -> matching(outcome, fingerprint));
+    }
+
+    /** Результат из таблицы; вызывается в транзакции перевода до изменения балансов. */
+    public Optional<Outcome> find(Long userId, String key, String fingerprint) {
+        return repository.findByUserIdAndKey(userId, key)
+                .map(stored -> {
+                    Outcome outcome = new Outcome(stored.getFingerprint(), stored.getTransferId());
+                    recent.put(new CacheKey(userId, key), outcome);
+                    return matching(outcome, fingerprint);
+                });
+    }
+
+    /**
+     * Сохраняет ключ в текущей транзакции перевода. Если тот же ключ параллельно записал другой запрос,
+     * бросает ConcurrencyFailureException: транзакция откатывается, а повтор найдёт его результат через find.
+     */
+    public void record(Long userId, String key, String fingerprint, Long transferId) {
+        IdempotencyKey entry = new IdempotencyKey();
+        entry.setUserId(userId);
+        entry.setKey(key);
+        entry.setFingerprint(fingerprint);
+        entry.setTransferId(transferId);
+        try {
+            repository.saveAndFlush(entry);
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Idempotency key for user {} recorded concurrently", userId);
+            throw new ConcurrencyFailureException("Idempotency key recorded concurrently", e);
+        }
+
+        Outcome outcome = new Outcome(fingerprint, transferId);
+        CacheKey cacheKey = new CacheKey(userId, key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // В LRU только после коммита, иначе откатившийся перевод выглядел бы применённым
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recent.put(cacheKey, outcome);
+                }
+            });
+        } else {
+            recent.put(cacheKey, outcome);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        LocalDateTime before = LocalDateTime.now().minus(ttl);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> repository.deleteOlderThan(before, purgeBatchSize));
+            total += deleted;
+        } while (deleted == purgeBatchSize);
+        if (total > 0) {
+            logger.info("Purged {} expired idempotency keys", total);
+        }
+    }
+
+    private static Outcome matching(Outcome outcome, String fingerprint) {
+        if (!outcome.fingerprint().equals(fingerprint)) {
+            throw new IllegalArgumentException("Idempotency-Key was already used with a different request");
+        }
+        return outcome;
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Режим single-writer для переводов (transfer.sharding.enabled). Переводы раскладываются по N
+ * однопоточным шардам по id карты зачисления, поэтому зачисления на горячую карту (расчётную,
+ * мерчанта) не ждут блокировок друг друга. Шард забирает из очереди до max-batch переводов и применяет
+ * их одной транзакцией (group commit): сначала {@link GroupLock} блокирует все карты группы в общем
+ * порядке, затем переводы выполняются по возрастанию id карты зачисления, каждый — в своей точке
+ * сохранения, чтобы отказ одного не откатывал остальные. Если сама групповая
+ * транзакция не прошла (конфликт блокировок, ошибка БД), переводы группы выполняются по одному обычным путём.
+ * Очереди ограничены: при переполнении запрос отклоняется с 429.
+ */
+@Component
+public class TransferShardExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferShardExecutor.class);
+
+    /**
+     * Блокирует карты группы внутри групповой транзакции до первого перевода.
+     */
+    @FunctionalInterface
+    public interface GroupLock {
+        void lock(List<Long> fromCardIds, List<Long> toCardIds);
+    }
+
+    // fallbacks — групповые транзакции, которые не прошли и были применены по одному.
+    // Задержка от постановки в очередь до результата — таймер transfer.shard.latency с тегом shard
+    public record ShardStats(int shard, int queueDepth, long completed, long rejected, long fallbacks) {}
+
+    private final boolean enabled;
+    private final int maxBatch;
+    private final TransactionTemplate groupTemplate;
+    private final TransactionTemplate itemTemplate;
+    private final Shard[] shards;
+    private volatile GroupLock groupLock = (fromCardIds, toCardIds) -> { };
+
+    public TransferShardExecutor(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 @Value("${transfer.sharding.enabled:false}") boolean enabled,
+                                 @Value("${transfer.sharding.shards:8}") int shardCount,
+                                 @Value("${transfer.sharding.queue-capacity:1000}") int queueCapacity,
+                                 @Value("${transfer.sharding.max-batch:100}") int maxBatch) {
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.groupTemplate = new TransactionTemplate(transactionManager);
+        this.itemTemplate = new TransactionTemplate(transactionManager);
+        this.itemTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.shards = new Shard[enabled ? shardCount : 0];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, queueCapacity, meterRegistry);
+            shards[i].thread.start();
+        }
+        if (enabled) {
+            logger.info("Sharded transfer execution enabled: {} shards, queue capacity {}, max batch {}",
+                    shardCount, queueCapacity, maxBatch);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setGroupLock(GroupLock groupLock) {
+        this.groupLock = groupLock;
+    }
+
+    /**
+     * Выполняет перевод на шарде карты зачисления. inGroup вызывается внутри групповой транзакции,
+     * alone — вместо него, если групповая транзакция не удалась (со своей транзакцией и повторами).
+     * Блокирует вызывающий поток до результата.
+     */
+    public <T> T execute(long fromCardId, long toCardId, Supplier<T> inGroup, Supplier<T> alone) {
+        Shard shard = shards[Math.floorMod(Long.hashCode(toCardId), shards.length)];
+        Task<T> task = new Task<>(fromCardId, toCardId, inGroup, alone);
+        if (!shard.queue.offer(task)) {
+            shard.rejected.increment();
+            logger.warn("Transfer shard {} queue is full, rejecting transfer", shard.index);
+            throw new TooManyRequestsException("Too many transfers in progress, please retry later");
+        }
+        try {
+            return task.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public List<ShardStats> stats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(new ShardStats(shard.index, shard.queue.size(), shard.completed.sum(), shard.rejected.sum(),
+                    shard.fallbacks.sum()));
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    // false — групповая транзакция не прошла, переводы применены по одному
+    private boolean runGroup(List<Task<?>> group) {
+        group.sort(TASK_ORDER);
+        try {
+            groupTemplate.executeWithoutResult(status -> {
+                groupLock.lock(group.stream().map(task -> task.fromCardId).toList(),
+                        group.stream().map(task -> task.toCardId).toList());
+                for (Task<?> task : group) {
+                    task.runInGroup(itemTemplate);
+                }
+            });
+            return true;
+        } catch (DataAccessException | TransactionException e) {
+            // Групповая транзакция откатилась целиком — применяем переводы по одному
+            logger.warn("Group of {} transfers failed, applying them one by one: {}", group.size(), e.getMessage());
+            for (Task<?> task : group) {
+                task.runAlone();
+            }
+            return false;
+        }
+    }
+
+    private final class Shard implements Runnable {
+        private final int index;
+        private final BlockingQueue<Task<?>> queue;
+        private final Thread thread;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder fallbacks = new LongAdder();
+        private final Timer latency;
+
+        private Shard(int index, int queueCapacity, MeterRegistry meterRegistry) {
+            this.index = index;
+            this.latency = Timer.builder("transfer.shard.latency")
+                    .tag("shard", String.valueOf(index))
+                    .register(meterRegistry);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this, "transfer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Task<?>> group = new ArrayList<>(maxBatch);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    group.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(group, maxBatch - 1);
+                try {
+                    if (!runGroup(group)) {
+                        fallbacks.increment();
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Transfer shard {} failed to process a group", index, e);
+                    group.forEach(task -> task.fail(e));
+                }
+                // Метрики до публикации результатов, чтобы вызывающий видел их уже учтёнными
+                long now = System.nanoTime();
+                for (Task<?> task : group) {
+                    latency.record(now - task.submittedAt, TimeUnit.NANOSECONDS);
+                }
+                completed.add(group.size());
+                group.forEach(Task::publish);
+                group.clear();
+            }
+            List<Task<?>> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            pending.forEach(task -> task.future.completeExceptionally(new IllegalStateException("Service is shutting down")));
+        }
+    }
+
+    private static final Comparator<Task<?>> TASK_ORDER =
+            Comparator.<Task<?>>comparingLong(task -> task.toCardId).thenComparingLong(task -> task.fromCardId);
+
+    private static final class Task<T> {
+        private final long fromCardId;
+        private final long toCardId;
+        private final Supplier<T> inGroup;
+        private final Supplier<T> alone;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submittedAt = System.nanoTime();
+        private T result;
+        private RuntimeException failure;
+
+        private Task(long fromCardId, long toCardId, Supplier<T> inGroup, Supplier<T> alone) {
+            this.fromCardId = fromCardId;
+            this.toCardId = toCardId;
+            this.inGroup = inGroup;
+            this.alone = alone;
+        }
+
+        private void runInGroup(TransactionTemplate itemTemplate) {
+            try {
+                result = itemTemplate.execute(status -> inGroup.get());
+                failure = null;
+            } catch (DataAccessException | TransactionException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // Отказ перевода (баланс, статус, владелец) — откат только до точки сохранения
+                fail(e);
+            }
+        }
+
+        private void runAlone() {
+            try {
+                result = alone.get();
+                failure = null;
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            result = null;
+            failure = e;
+        }
+
+        private void publish() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
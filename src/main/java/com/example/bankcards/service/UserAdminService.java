@@ -4,6 +4,8 @@ import com.example.bankcards.dto.UserDTO;
 import com.example.bankcards.dto.UserUpdateDTO;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.TokenRevocationRegistry;
+import com.example.bankcards.security.UserCache;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -14,10 +16,15 @@ public class UserAdminService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
+    private final UserCache userCache;
 
-    public UserAdminService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserAdminService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                            TokenRevocationRegistry tokenRevocationRegistry, UserCache userCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenRevocationRegistry = tokenRevocationRegistry;
+        this.userCache = userCache;
     }
 
     public Page<User> list(String q, Pageable pageable) {
@@ -35,11 +42,14 @@ public class UserAdminService {
         u.setUsername(dto.getUsername());
         u.setPassword(passwordEncoder.encode(dto.getPassword()));
         u.setRole(dto.getRole());
-        return userRepository.save(u);
+        User saved = userRepository.save(u);
+        userCache.evict(saved.getUsername());
+        return saved;
     }
 
     public User update(Long id, UserUpdateDTO dto) {
         User u = userRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("User not found: " + id));
+        String oldUsername = u.getUsername();
         if (dto.getUsername() != null && !dto.getUsername().isBlank()) {
             u.setUsername(dto.getUsername());
         }
@@ -49,12 +59,19 @@ public class UserAdminService {
         if (dto.getRole() != null) {
             u.setRole(dto.getRole());
         }
-        return userRepository.save(u);
+        User saved = userRepository.save(u);
+        userCache.evict(oldUsername);
+        userCache.evict(saved.getUsername());
+        // Роль и имя зашиты в выданные access-токены
+        tokenRevocationRegistry.revoke(id);
+        return saved;
     }
 
     public void delete(Long id) {
         User u = userRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("User not found: " + id));
         userRepository.delete(u);
+        userCache.evict(u.getUsername());
+        tokenRevocationRegistry.revoke(id);
     }
 }
 
@@ -7,6 +7,9 @@ import com.example.bankcards.dto.RegisterRequest;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.security.CustomUserDetailsService;
 import com.example.bankcards.security.JwtUtils;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -25,17 +28,23 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
     private final AuthenticationManager authManager;
+    private final Timer hashTimer;
+    // Проверка пароля при входе: поиск пользователя и BCrypt matches внутри AuthenticationManager
+    private final Timer verifyTimer;
 
     public UserService(
             UserDetailsService userDetailsService,
             PasswordEncoder passwordEncoder,
             JwtUtils jwtUtils,
-            AuthenticationManager authManager
+            AuthenticationManager authManager,
+            MeterRegistry meterRegistry
     ) {
         this.userDetailsService = userDetailsService;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtils = jwtUtils;
         this.authManager = authManager;
+        this.hashTimer = Timer.builder("user.password").tag("operation", "hash").register(meterRegistry);
+        this.verifyTimer = Timer.builder("user.password").tag("operation", "verify").register(meterRegistry);
     }
 
     public AuthResponse register(RegisterRequest request) {
@@ -47,13 +56,13 @@ public class UserService {
             if (request.getRole().equals(User.Role.USER)){
                 ((CustomUserDetailsService) userDetailsService).saveUser(
                         request.getUsername(),
-                        passwordEncoder.encode(request.getPassword()),
+                        hashTimer.record(() -> passwordEncoder.encode(request.getPassword())),
                         request.getRole());
             }
             if (request.getRole().equals(User.Role.ADMIN)){
                 ((CustomUserDetailsService) userDetailsService).saveUser(
                         request.getUsername(),
-                        passwordEncoder.encode(request.getPassword()),
+                        hashTimer.record(() -> passwordEncoder.encode(request.getPassword())),
                         request.getRole()
                 );
             }
@@ -77,12 +86,12 @@ public class UserService {
 
     public AuthResponse login(LoginRequest request) {
         try {
-            authManager.authenticate(
+            verifyTimer.record(() -> authManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             request.getUsername(),
                             request.getPassword()
                     )
-            );
+            ));
 
             UserDetails user = userDetailsService.loadUserByUsername(request.getUsername());
 
@@ -104,22 +113,22 @@ public class UserService {
     public AuthResponse refresh(RefreshRequest request) {
         try {
             String refreshToken = request.getRefreshToken();
-            String username = jwtUtils.extractUsername(refreshToken);
+            String username = jwtUtils.parseClaims(refreshToken)
+                    .map(Claims::getSubject)
+                    .orElseThrow(() -> new Exception("Invalid refresh token"));
 
-            UserDetails user = userDetailsService.loadUserByUsername(username);
+            UserDetails user = userDetailsService instanceof CustomUserDetailsService custom
+                    ? custom.loadCurrentUserByUsername(username)
+                    : userDetailsService.loadUserByUsername(username);
 
-            if (jwtUtils.isTokenValid(refreshToken, user)) {
-                String newAccessToken = jwtUtils.generateAccessToken(user);
-                String newRefreshToken = jwtUtils.generateRefreshToken(user);
+            String newAccessToken = jwtUtils.generateAccessToken(user);
+            String newRefreshToken = jwtUtils.generateRefreshToken(user);
 
-                AuthResponse response = new AuthResponse();
-                response.setAccessToken(newAccessToken);
-                response.setRefreshToken(newRefreshToken);
+            AuthResponse response = new AuthResponse();
+            response.setAccessToken(newAccessToken);
+            response.setRefreshToken(newRefreshToken);
 
-                return response;
-            } else {
-                throw new Exception("Invalid refresh token");
-            }
+            return response;
 
         } catch (Exception e) {
             logger.error("Error during token refresh: ", e);
@@ -0,0 +1,31 @@
+package com.example.bankcards.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в списке карт для keyset-пагинации: id последней выданной карты.
+ * Клиенту отдаётся как непрозрачная base64url-строка.
+ */
+public record CardCursor(Long id) {
+
+    private static final String PREFIX = "card:";
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CardCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!raw.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new CardCursor(Long.valueOf(raw.substring(PREFIX.length())));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package com.example.bankcards.util;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * AES-GCM шифрование номеров карт. Формат шифртекста: IV (12 байт) || ciphertext || tag (16 байт),
+ * в строковом API — в Base64.
+ */
 @Component
 public class CardEncryptor {
 
@@ -22,7 +33,21 @@ public class CardEncryptor {
     private static final int GCM_IV_LENGTH = 12; // Длина IV для GCM (в байтах)
     private static final int GCM_TAG_LENGTH = 16; // Длина тега аутентификации (в байтах)
 
-    public CardEncryptor(@Value("${encryption.key:}") String key) {
+    // SecureRandom потокобезопасен, один экземпляр на все вызовы
+    private final SecureRandom ivSource = new SecureRandom();
+    // Cipher не потокобезопасен: экземпляр берётся из пула на вызов и переинициализируется.
+    // ThreadLocal не подходит — на виртуальных потоках Cipher.getInstance выполнялся бы на каждый запрос
+    private final InstancePool<Cipher> ciphers = new InstancePool<>(InstancePool.DEFAULT_CAPACITY, CardEncryptor::newCipher);
+
+    private final Timer encryptTimer;
+    private final Timer decryptTimer;
+
+    public CardEncryptor(String key) {
+        this(key, Metrics.globalRegistry);
+    }
+
+    @Autowired
+    public CardEncryptor(@Value("${encryption.key:}") String key, MeterRegistry meterRegistry) {
         logger.debug("Initializing CardEncryptor with provided key length: {}", key.length());
         if (key == null || key.isEmpty()) {
             logger.error("Encryption key is not provided. Please set 'encryption.key' in application.properties or as an environment variable (ENCRYPTION_KEY).");
@@ -33,54 +58,143 @@ public class CardEncryptor {
             throw new IllegalArgumentException("Encryption key must be exactly 16 characters long for AES-128.");
         }
         this.secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
+        this.encryptTimer = Timer.builder("card.encryptor").tag("operation", "encrypt").register(meterRegistry);
+        this.decryptTimer = Timer.builder("card.encryptor").tag("operation", "decrypt").register(meterRegistry);
         logger.info("CardEncryptor initialized successfully.");
     }
 
     public String encrypt(String data) {
+        String result = Base64.getEncoder().encodeToString(encrypt(data.getBytes(StandardCharsets.UTF_8)));
+        logger.debug("Data encrypted successfully.");
+        return result;
+    }
+
+    public String decrypt(String encryptedData) {
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(encryptedData);
+        } catch (IllegalArgumentException e) {
+            logger.error("Decryption failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Decryption failed: " + e.getMessage(), e);
+        }
+        String result = new String(decrypt(decoded), StandardCharsets.UTF_8);
+        logger.debug("Data decrypted successfully.");
+        return result;
+    }
+
+    /**
+     * Шифрует данные и возвращает IV || ciphertext || tag одним массивом, без промежуточных копий.
+     */
+    public byte[] encrypt(byte[] data) {
+        long start = System.nanoTime();
+        Cipher cipher = null;
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
             byte[] iv = new byte[GCM_IV_LENGTH];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, gcmSpec);
-
-            byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            byte[] encryptedWithIv = new byte[GCM_IV_LENGTH + encrypted.length];
-            System.arraycopy(iv, 0, encryptedWithIv, 0, GCM_IV_LENGTH);
-            System.arraycopy(encrypted, 0, encryptedWithIv, GCM_IV_LENGTH, encrypted.length);
-
-            String result = Base64.getEncoder().encodeToString(encryptedWithIv);
-            logger.debug("Data encrypted successfully.");
-            return result;
+            ivSource.nextBytes(iv);
+            cipher = ciphers.borrow();
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            byte[] out = new byte[encryptedLength(data.length)];
+            System.arraycopy(iv, 0, out, 0, GCM_IV_LENGTH);
+            cipher.doFinal(data, 0, data.length, out, GCM_IV_LENGTH);
+            return out;
         } catch (Exception e) {
             logger.error("Encryption failed: {}", e.getMessage(), e);
             throw new RuntimeException("Encryption failed: " + e.getMessage(), e);
+        } finally {
+            if (cipher != null) {
+                ciphers.release(cipher);
+            }
+            long elapsed = System.nanoTime() - start;
+            encryptTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Phase.CRYPTO, elapsed);
         }
     }
 
-    public String decrypt(String encryptedData) {
+    /**
+     * Расшифровывает массив в формате IV || ciphertext || tag.
+     */
+    public byte[] decrypt(byte[] encryptedData) {
+        long start = System.nanoTime();
+        Cipher cipher = null;
         try {
-            byte[] decoded = Base64.getDecoder().decode(encryptedData);
+            if (encryptedData.length < GCM_IV_LENGTH + GCM_TAG_LENGTH) {
+                throw new IllegalArgumentException("Encrypted data is too short");
+            }
+            cipher = ciphers.borrow();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, encryptedData, 0, GCM_IV_LENGTH));
+            return cipher.doFinal(encryptedData, GCM_IV_LENGTH, encryptedData.length - GCM_IV_LENGTH);
+        } catch (Exception e) {
+            logger.error("Decryption failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Decryption failed: " + e.getMessage(), e);
+        } finally {
+            if (cipher != null) {
+                ciphers.release(cipher);
+            }
+            long elapsed = System.nanoTime() - start;
+            decryptTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Phase.CRYPTO, elapsed);
+        }
+    }
+
+    /**
+     * Шифрует оставшиеся байты {@code data} и пишет IV || ciphertext || tag в {@code out}.
+     * В {@code out} должно быть не меньше {@link #encryptedLength(int)} свободных байт.
+     */
+    public void encrypt(ByteBuffer data, ByteBuffer out) {
+        long start = System.nanoTime();
+        Cipher cipher = null;
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            ivSource.nextBytes(iv);
+            cipher = ciphers.borrow();
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            out.put(iv);
+            cipher.doFinal(data, out);
+        } catch (Exception e) {
+            logger.error("Encryption failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Encryption failed: " + e.getMessage(), e);
+        } finally {
+            if (cipher != null) {
+                ciphers.release(cipher);
+            }
+            long elapsed = System.nanoTime() - start;
+            encryptTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Phase.CRYPTO, elapsed);
+        }
+    }
+
+    /**
+     * Расшифровывает оставшиеся байты {@code encryptedData} (IV || ciphertext || tag) в {@code out}.
+     */
+    public void decrypt(ByteBuffer encryptedData, ByteBuffer out) {
+        long start = System.nanoTime();
+        Cipher cipher = null;
+        try {
+            if (encryptedData.remaining() < GCM_IV_LENGTH + GCM_TAG_LENGTH) {
+                throw new IllegalArgumentException("Encrypted data is too short");
+            }
             byte[] iv = new byte[GCM_IV_LENGTH];
-            byte[] encrypted = new byte[decoded.length - GCM_IV_LENGTH];
-            System.arraycopy(decoded, 0, iv, 0, GCM_IV_LENGTH);
-            System.arraycopy(decoded, GCM_IV_LENGTH, encrypted, 0, encrypted.length);
-
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmSpec);
-
-            byte[] decrypted = cipher.doFinal(encrypted);
-            String result = new String(decrypted, StandardCharsets.UTF_8);
-            logger.debug("Data decrypted successfully.");
-            return result;
+            encryptedData.get(iv);
+            cipher = ciphers.borrow();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            cipher.doFinal(encryptedData, out);
         } catch (Exception e) {
             logger.error("Decryption failed: {}", e.getMessage(), e);
             throw new RuntimeException("Decryption failed: " + e.getMessage(), e);
+        } finally {
+            if (cipher != null) {
+                ciphers.release(cipher);
+            }
+            long elapsed = System.nanoTime() - start;
+            decryptTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Phase.CRYPTO, elapsed);
         }
     }
 
+    public static int encryptedLength(int plaintextLength) {
+        return GCM_IV_LENGTH + plaintextLength + GCM_TAG_LENGTH;
+    }
+
     public String maskCardNumber(String encryptedCardNumber) {
         try {
             String decrypted = decrypt(encryptedCardNumber);
@@ -88,13 +202,22 @@ public class CardEncryptor {
                 logger.error("Card number too short to mask: length {}", decrypted.length());
                 throw new IllegalArgumentException("Card number too short to mask");
             }
-            String masked = decrypted.replaceAll(".{12}(.{4})", "**** **** **** $1");
+            String masked = CardMapper.maskLastFour(CardMapper.lastFour(decrypted));
             logger.debug("Card number masked successfully.");
             return masked;
         } catch (Exception e) {
             logger.error("Failed to mask card number: {}", e.getMessage(), e);
             // Возвращаем безопасную маску, не падаем 500
-            return "**** **** **** ****";
+            return CardMapper.FULL_MASK;
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            logger.error("Failed to initialize {}: {}", ALGORITHM, e.getMessage(), e);
+            throw new IllegalStateException("Failed to initialize " + ALGORITHM, e);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,21 @@
 package com.example.bankcards.util;
 
 import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardView;
 import com.example.bankcards.entity.Card;
 
 public class CardMapper {
+    public static final String MASK_PREFIX = "**** **** **** ";
+    public static final String FULL_MASK = "**** **** **** ****";
+
     public static CardResponse toResponse(Card card) {
         CardResponse resp = new CardResponse();
         resp.setId(card.getId());
-        resp.setCardNumber(card.getNumber());
+        resp.setCardNumber(maskLastFour(card.getNumberLast4()));
         resp.setOwner(card.getOwner().getUsername());
         resp.setExpiryDate(card.getExpiration());
         resp.setStatus(card.getStatus().getName());
-        resp.setBalance(card.getBalance());
+        resp.setBalance(card.getTotalBalance());
         return resp;
     }
 
@@ -20,6 +24,34 @@ public class CardMapper {
         resp.setCardNumber(maskedNumber);
         return resp;
     }
+
+    public static CardResponse toResponse(CardView card) {
+        CardResponse resp = new CardResponse();
+        resp.setId(card.id());
+        resp.setCardNumber(maskLastFour(card.numberLast4()));
+        resp.setOwner(card.ownerUsername());
+        resp.setExpiryDate(card.expiration());
+        resp.setStatus(card.statusName());
+        resp.setBalance(card.balance());
+        return resp;
+    }
+
+    public static CardResponse toResponse(CardView card, String maskedNumber) {
+        CardResponse resp = toResponse(card);
+        resp.setCardNumber(maskedNumber);
+        return resp;
+    }
+
+    public static String maskLastFour(String lastFour) {
+        if (lastFour == null || lastFour.length() != 4) {
+            return FULL_MASK;
+        }
+        return MASK_PREFIX + lastFour;
+    }
+
+    public static String lastFour(String cardNumber) {
+        return cardNumber.substring(cardNumber.length() - 4);
+    }
 }
 
 
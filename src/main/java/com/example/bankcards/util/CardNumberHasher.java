@@ -0,0 +1,64 @@
+package com.example.bankcards.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/**
+ * Детерминированный "слепой индекс" номера карты (HMAC-SHA256).
+ * Шифртекст в cards.number каждый раз разный из-за случайного IV, поэтому
+ * поиск и проверка уникальности идут по этому хэшу.
+ */
+@Component
+public class CardNumberHasher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardNumberHasher.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_LENGTH = 16;
+
+    private final SecretKeySpec secretKey;
+    // Mac не потокобезопасен: инициализированный ключом экземпляр берётся из пула на вызов
+    private final InstancePool<Mac> macs = new InstancePool<>(InstancePool.DEFAULT_CAPACITY, this::newMac);
+
+    public CardNumberHasher(@Value("${encryption.index-key:}") String key) {
+        if (key == null || key.isEmpty()) {
+            logger.error("Index key is not provided. Please set 'encryption.index-key' in application.yml or as an environment variable (ENCRYPTION_INDEX_KEY).");
+            throw new IllegalArgumentException("Index key is not provided. Please set 'encryption.index-key' in application.yml or as an environment variable.");
+        }
+        if (key.length() < MIN_KEY_LENGTH) {
+            logger.error("Index key must be at least {} characters long, but was {} characters.", MIN_KEY_LENGTH, key.length());
+            throw new IllegalArgumentException("Index key must be at least " + MIN_KEY_LENGTH + " characters long.");
+        }
+        this.secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        logger.info("CardNumberHasher initialized successfully.");
+    }
+
+    public String hash(String cardNumber) {
+        Mac mac = macs.borrow();
+        try {
+            // doFinal сбрасывает Mac, экземпляр сразу готов к следующему вызову
+            return HexFormat.of().formatHex(mac.doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            macs.release(mac);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            logger.error("Failed to initialize {}: {}", ALGORITHM, e.getMessage(), e);
+            throw new IllegalStateException("Failed to initialize " + ALGORITHM, e);
+        }
+    }
+}
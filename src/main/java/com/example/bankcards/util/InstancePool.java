@@ -0,0 +1,36 @@
+package com.example.bankcards.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Небольшой пул готовых непотокобезопасных объектов (Cipher, Mac). borrow не ждёт: если свободного
+ * экземпляра нет, создаёт новый; release кладёт экземпляр обратно, пока пул не заполнен.
+ * В отличие от ThreadLocal переживает виртуальные потоки, у которых на каждый запрос свой поток.
+ */
+final class InstancePool<T> {
+
+    // Шифрование занимает процессор, одновременно его выполняют не больше потоков, чем ядер
+    static final int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    InstancePool(int capacity, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    T borrow() {
+        T instance = idle.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    void release(T instance) {
+        idle.offer(instance);
+    }
+
+    int idle() {
+        return idle.size();
+    }
+}
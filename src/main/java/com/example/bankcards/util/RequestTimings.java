@@ -0,0 +1,101 @@
+package com.example.bankcards.util;
+
+import java.util.Locale;
+
+/**
+ * Время фаз обработки одного запроса: накапливается в ThreadLocal, который выставляет
+ * {@link com.example.bankcards.config.ServerTimingFilter}. Фазы могут пересекаться: SQL поиска
+ * пользователя входит и в user, и в db. Работа в других потоках (шарды переводов) не учитывается.
+ * Пока фильтр не включён, start() и record() сводятся к чтению одного volatile-флага.
+ */
+public final class RequestTimings {
+
+    public enum Phase {
+        JWT("jwt"), USER("user"), DB("db"), CRYPTO("crypto"), JSON("json");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+
+        public String metric() {
+            return metric;
+        }
+    }
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+    private static volatile boolean enabled;
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final int[] calls = new int[Phase.values().length];
+
+    private RequestTimings() {
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Метка начала фазы; 0, если запрос не измеряется.
+     */
+    public static long start() {
+        return enabled && CURRENT.get() != null ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(Phase phase, long start) {
+        if (start != 0L) {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public static void record(Phase phase, long elapsedNanos) {
+        if (!enabled) {
+            return;
+        }
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.nanos[phase.ordinal()] += elapsedNanos;
+            timings.calls[phase.ordinal()]++;
+        }
+    }
+
+    public long nanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public int calls(Phase phase) {
+        return calls[phase.ordinal()];
+    }
+
+    /**
+     * Значение заголовка Server-Timing, например {@code jwt;dur=0.12, db;dur=3.40, total;dur=5.01}.
+     * Фазы без вызовов пропускаются.
+     */
+    public String toServerTiming(long totalNanos) {
+        StringBuilder header = new StringBuilder(96);
+        for (Phase phase : Phase.values()) {
+            if (calls[phase.ordinal()] > 0) {
+                appendMetric(header, phase.metric(), nanos[phase.ordinal()]);
+                header.append(", ");
+            }
+        }
+        appendMetric(header, "total", totalNanos);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.2f", nanos / 1e6));
+    }
+}
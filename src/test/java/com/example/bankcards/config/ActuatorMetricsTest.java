@@ -0,0 +1,69 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.security.JwtUtils;
+import com.example.bankcards.security.UserPrincipal;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /actuator/prometheus доступен скрейперу по HTTP Basic и администратору по JWT, health — всем.
+ */
+@SpringBootTest(properties = {"metrics.scrape.password=scrape-secret",
+        // Отдельный контекст — отдельная база, общую уже разметил Liquibase другого контекста
+        "spring.datasource.url=jdbc:h2:mem:bankcards-actuator;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;LOCK_TIMEOUT=10000"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@ActiveProfiles("test")
+public class ActuatorMetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Test
+    void health_isPublic() throws Exception {
+        mockMvc.perform(get("/actuator/health"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void prometheus_requiresScrapeCredentials() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "wrong")))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "scrape-secret")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.containsString("card_transfer_seconds_bucket")))
+                .andExpect(content().string(Matchers.containsString("card_encryptor_seconds_count")))
+                .andExpect(content().string(Matchers.containsString("hikaricp_connections_active")))
+                .andExpect(content().string(Matchers.containsString("user_cache_requests_total")));
+    }
+
+    @Test
+    void prometheus_allowsAdminTokenOnly() throws Exception {
+        String admin = jwtUtils.generateAccessToken(new UserPrincipal(1L, "admin", "pwd", User.Role.ADMIN));
+        String user = jwtUtils.generateAccessToken(new UserPrincipal(2L, "user", "pwd", User.Role.USER));
+
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer " + admin))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.containsString("jwt_verify_seconds_count")));
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer " + user))
+                .andExpect(status().isForbidden());
+    }
+}
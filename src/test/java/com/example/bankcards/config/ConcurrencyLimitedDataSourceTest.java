@@ -0,0 +1,53 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class ConcurrencyLimitedDataSourceTest {
+
+    private DataSource target;
+    private ConcurrencyLimitedDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        target = Mockito.mock(DataSource.class);
+        Mockito.when(target.getConnection()).thenAnswer(invocation -> Mockito.mock(Connection.class));
+        dataSource = new ConcurrencyLimitedDataSource(target, 2, 50L);
+    }
+
+    @Test
+    void rejectsWhenAllPermitsAreTaken_untilAConnectionIsClosed() throws SQLException {
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        Assertions.assertThrows(TooManyRequestsException.class, dataSource::getConnection);
+        Assertions.assertEquals(new ConcurrencyLimitedDataSource.LimiterStats(2, 0, 0, 1), dataSource.stats());
+
+        first.close();
+        Assertions.assertNotNull(dataSource.getConnection());
+    }
+
+    @Test
+    void repeatedCloseReleasesPermitOnce() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+
+        Assertions.assertEquals(2, dataSource.stats().available());
+    }
+
+    @Test
+    void failedConnectionReturnsPermit() throws SQLException {
+        Mockito.when(target.getConnection()).thenThrow(new SQLException("pool timeout"));
+
+        Assertions.assertThrows(SQLException.class, dataSource::getConnection);
+        Assertions.assertEquals(2, dataSource.stats().available());
+    }
+}
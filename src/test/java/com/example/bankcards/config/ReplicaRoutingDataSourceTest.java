@@ -0,0 +1,161 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Две «реплики» и primary — отдельные базы H2 в памяти. Реплики размечены тем же changelog,
+ * отставание каждая отдаёт из таблицы replication_lag вместо pg_last_xact_replay_timestamp().
+ */
+@SpringBootTest(properties = {"replicas.enabled=true",
+        "spring.datasource.url=" + ReplicaRoutingDataSourceTest.PRIMARY_URL,
+        "replicas.instances[0].url=" + ReplicaRoutingDataSourceTest.REPLICA_A_URL,
+        "replicas.instances[1].url=" + ReplicaRoutingDataSourceTest.REPLICA_B_URL,
+        "replicas.max-lag-ms=5000",
+        "replicas.lag-query=SELECT lag_ms FROM replication_lag",
+        "replicas.health-check-interval-ms=3600000"})
+@ActiveProfiles("test")
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String H2_OPTIONS = ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    static final String PRIMARY_URL = "jdbc:h2:mem:bankcards-primary" + H2_OPTIONS;
+    static final String REPLICA_A_URL = "jdbc:h2:mem:bankcards-replica-a" + H2_OPTIONS;
+    static final String REPLICA_B_URL = "jdbc:h2:mem:bankcards-replica-b" + H2_OPTIONS;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private UserCache userCache;
+
+    @BeforeAll
+    static void createReplicas() throws Exception {
+        for (String url : List.of(REPLICA_A_URL, REPLICA_B_URL)) {
+            DriverManagerDataSource replica = new DriverManagerDataSource(url, "sa", "");
+            SpringLiquibase liquibase = new SpringLiquibase();
+            liquibase.setDataSource(replica);
+            liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.yaml");
+            liquibase.setResourceLoader(new DefaultResourceLoader());
+            liquibase.afterPropertiesSet();
+
+            JdbcTemplate jdbc = new JdbcTemplate(replica);
+            jdbc.execute("CREATE TABLE replication_lag (lag_ms BIGINT)");
+            jdbc.update("INSERT INTO replication_lag (lag_ms) VALUES (0)");
+            jdbc.update("INSERT INTO users (username, password, role) VALUES ('replica-only', 'hash', 'USER')");
+        }
+    }
+
+    @AfterEach
+    void resetLag() {
+        setLag(REPLICA_A_URL, 0);
+        setLag(REPLICA_B_URL, 0);
+        replicaRoutingDataSource.checkReplicas();
+    }
+
+    @Test
+    void readOnlyTransactions_roundRobinOverReplicas_writesGoToPrimary() {
+        List<String> reads = List.of(database(true), database(true), database(true));
+
+        Assertions.assertEquals(Set.of("bankcards-replica-a", "bankcards-replica-b"), Set.copyOf(reads));
+        Assertions.assertNotEquals(reads.get(0), reads.get(1));
+        Assertions.assertEquals(reads.get(0), reads.get(2));
+        Assertions.assertEquals("bankcards-primary", database(false));
+    }
+
+    @Test
+    void readOnlyJpaQueryIsServedByReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Optional<User> fromReplica = readOnly.execute(status -> userRepository.findByUsername("replica-only"));
+        Optional<User> fromPrimary = new TransactionTemplate(transactionManager)
+                .execute(status -> userRepository.findByUsername("replica-only"));
+
+        Assertions.assertTrue(fromReplica.isPresent());
+        Assertions.assertTrue(fromPrimary.isEmpty());
+    }
+
+    @Test
+    void userLookupsReadPrimaryEvenInsideReadOnlyTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        // replica-only есть только на репликах: роль с отстающей реплики в кэш попасть не должна
+        Assertions.assertTrue(readOnly.execute(status -> userCache.findByUsername("replica-only")).isEmpty());
+        Assertions.assertTrue(userCache.findByUsername("replica-only").isEmpty());
+    }
+
+    @Test
+    void laggingReplicaIsSkipped_andAllLaggingFallsBackToPrimary() {
+        setLag(REPLICA_A_URL, 60_000);
+        replicaRoutingDataSource.checkReplicas();
+
+        Assertions.assertEquals(List.of("bankcards-replica-b", "bankcards-replica-b"),
+                List.of(database(true), database(true)));
+
+        setLag(REPLICA_B_URL, 60_000);
+        replicaRoutingDataSource.checkReplicas();
+
+        Assertions.assertEquals("bankcards-primary", database(true));
+        Assertions.assertEquals(List.of(new ReplicaRoutingDataSource.ReplicaStatus("replica-0", true, 60_000),
+                new ReplicaRoutingDataSource.ReplicaStatus("replica-1", true, 60_000)), replicaRoutingDataSource.status());
+    }
+
+    @Test
+    void failingHealthCheckTakesReplicaOutOfRotation() {
+        JdbcTemplate replicaA = new JdbcTemplate(new DriverManagerDataSource(REPLICA_A_URL, "sa", ""));
+        replicaA.execute("ALTER TABLE replication_lag RENAME TO replication_lag_off");
+        try {
+            replicaRoutingDataSource.checkReplicas();
+
+            Assertions.assertFalse(replicaRoutingDataSource.status().get(0).healthy());
+            Assertions.assertEquals(List.of("bankcards-replica-b", "bankcards-replica-b"),
+                    List.of(database(true), database(true)));
+        } finally {
+            replicaA.execute("ALTER TABLE replication_lag_off RENAME TO replication_lag");
+        }
+    }
+
+    @Test
+    void replicaPoolsAndStatusArePublishedAsMetrics() {
+        Assertions.assertNotNull(meterRegistry.find("hikaricp.connections").tag("pool", "replica-0").gauge());
+        Assertions.assertNotNull(meterRegistry.find("hikaricp.connections").tag("pool", "replica-1").gauge());
+        Assertions.assertEquals(1.0, meterRegistry.get("db.replica.healthy").tag("replica", "replica-1").gauge().value());
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT DATABASE()", String.class));
+    }
+
+    private static void setLag(String url, long lagMs) {
+        new JdbcTemplate(new DriverManagerDataSource(url, "sa", "")).update("UPDATE replication_lag SET lag_ms = ?", lagMs);
+    }
+}
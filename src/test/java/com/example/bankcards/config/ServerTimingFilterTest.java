@@ -0,0 +1,88 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.JwtUtils;
+import com.example.bankcards.security.UserPrincipal;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Server-Timing на /card: фазы отмечаются фильтром JWT, кэшем пользователей, репозиториями,
+ * шифрованием и сериализацией; тело ответа доходит до клиента целиком.
+ */
+@SpringBootTest(properties = {"server-timing.enabled=true", "server-timing.log-sample-rate=1.0",
+        // Отдельный контекст — отдельная база, общую уже разметил Liquibase другого контекста
+        "spring.datasource.url=jdbc:h2:mem:bankcards-server-timing;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;LOCK_TIMEOUT=10000"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ServerTimingFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtils jwtUtils;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User admin;
+    private String token;
+
+    @BeforeEach
+    void setup() {
+        admin = new User();
+        admin.setUsername("timing-" + System.nanoTime());
+        admin.setPassword("hash");
+        admin.setRole(User.Role.ADMIN);
+        admin = userRepository.save(admin);
+        token = jwtUtils.generateAccessToken(new UserPrincipal(admin.getId(), admin.getUsername(), "hash", User.Role.ADMIN));
+    }
+
+    @Test
+    void cardList_reportsJwtUserDbAndJsonPhases() throws Exception {
+        mockMvc.perform(get("/card").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").isArray())
+                .andExpect(header().string("Server-Timing", Matchers.allOf(
+                        Matchers.containsString("jwt;dur="),
+                        Matchers.containsString("user;dur="),
+                        Matchers.containsString("db;dur="),
+                        Matchers.containsString("json;dur="),
+                        Matchers.containsString("total;dur="))));
+    }
+
+    @Test
+    void createCard_reportsEncryption() throws Exception {
+        String number = String.valueOf(ThreadLocalRandom.current().nextLong(1_000_000_000_000_000L, 9_999_999_999_999_999L));
+        String body = "{\"number\":\"" + number + "\",\"ownerId\":" + admin.getId()
+                + ",\"expiration\":\"2030-01-01\",\"balance\":100}";
+
+        mockMvc.perform(post("/card").header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.cardNumber").value(Matchers.endsWith(number.substring(12))))
+                .andExpect(header().string("Server-Timing", Matchers.containsString("crypto;dur=")));
+    }
+
+    @Test
+    void otherPaths_areNotMeasured() throws Exception {
+        mockMvc.perform(get("/actuator/health"))
+                .andExpect(header().doesNotExist("Server-Timing"));
+    }
+}
@@ -2,8 +2,14 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardSliceResponse;
 import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferHistoryResponse;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.dto.TransferResult;
+import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.exception.GlobalExceptionHandler;
+import com.example.bankcards.exception.TooManyRequestsException;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.security.JwtAuthFilter;
 import com.example.bankcards.security.JwtUtils;
@@ -19,7 +25,9 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.CannotCreateTransactionException;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -79,6 +87,28 @@ public class CardControllerTest {
                 .andExpect(jsonPath("$.content[0].id").value(1));
     }
 
+    @Test
+    void scroll_returnsSliceWithCursor() throws Exception {
+        CardResponse resp = new CardResponse();
+        resp.setId(1L);
+        Mockito.when(cardService.scrollCards(CardStatus.Code.ACTIVE, null, "abc", 50, "user1"))
+                .thenReturn(new CardSliceResponse(List.of(resp), "next"));
+
+        mockMvc.perform(get("/card/scroll").param("cursor", "abc").param("size", "50").param("status", "ACTIVE")
+                        .principal(() -> "user1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(1))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void read_unknownStatus_returns400() throws Exception {
+        mockMvc.perform(get("/card").param("status", "FROZEN").principal(() -> "user1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("status")));
+        Mockito.verifyNoInteractions(cardService);
+    }
+
     @Test
     void getById_returns200() throws Exception {
         CardResponse resp = new CardResponse();
@@ -91,6 +121,34 @@ public class CardControllerTest {
                 .andExpect(jsonPath("$.id").value(10));
     }
 
+    @Test
+    void transfers_returnsPageWithCursor() throws Exception {
+        TransferResponse item = new TransferResponse(5L, 10L, 20L, 100L, LocalDateTime.of(2025, 1, 1, 10, 0));
+        Mockito.when(cardService.getTransferHistory(10L, "abc", 1, "user1"))
+                .thenReturn(new TransferHistoryResponse(List.of(item), "next"));
+
+        mockMvc.perform(get("/card/10/transfers").param("cursor", "abc").param("size", "1").principal(() -> "user1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(5))
+                .andExpect(jsonPath("$.items[0].fromCardId").value(10))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void lookup_returns200() throws Exception {
+        CardResponse resp = new CardResponse();
+        resp.setId(7L);
+        resp.setCardNumber("**** **** **** 5678");
+        Mockito.when(cardService.findCardByNumber("1234567812345678")).thenReturn(resp);
+
+        String body = "{" +
+                "\"number\":\"1234567812345678\"}";
+
+        mockMvc.perform(post("/card/lookup").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(7));
+    }
+
     @Test
     void update_returns200() throws Exception {
         CardResponse resp = new CardResponse();
@@ -137,6 +195,18 @@ public class CardControllerTest {
         Mockito.verify(cardService).activateCardAdmin(10L);
     }
 
+    @Test
+    void setBalanceSlots_returns200() throws Exception {
+        CardResponse resp = new CardResponse();
+        resp.setId(10L);
+        resp.setBalance(500L);
+        Mockito.when(cardService.setBalanceSlots(10L, 8)).thenReturn(resp);
+
+        mockMvc.perform(put("/card/10/balance-slots").param("slots", "8"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(500));
+    }
+
     @Test
     void transfer_returns200() throws Exception {
         String body = "{" +
@@ -145,7 +215,60 @@ public class CardControllerTest {
                 "\"amount\":100}";
         mockMvc.perform(post("/card/transfer").contentType(MediaType.APPLICATION_JSON).content(body).principal(() -> "user1"))
                 .andExpect(status().isOk());
-        Mockito.verify(cardService).transfer(Mockito.any(TransferDTO.class), Mockito.eq("user1"));
+        Mockito.verify(cardService).transfer(Mockito.any(TransferDTO.class), Mockito.eq("user1"), Mockito.isNull());
+    }
+
+    @Test
+    void transfer_queueFull_returns429() throws Exception {
+        Mockito.doThrow(new TooManyRequestsException("Too many transfers in progress, please retry later"))
+                .when(cardService).transfer(Mockito.any(TransferDTO.class), Mockito.eq("user1"), Mockito.isNull());
+        String body = "{\"fromCardId\":10,\"toCardId\":20,\"amount\":100}";
+        mockMvc.perform(post("/card/transfer").contentType(MediaType.APPLICATION_JSON).content(body).principal(() -> "user1"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.status").value(429));
+    }
+
+    @Test
+    void read_databaseBusy_returns429() throws Exception {
+        Mockito.when(cardService.getCardById(Mockito.eq(10L), Mockito.anyString()))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager for transaction",
+                        new TooManyRequestsException("Database is busy, please retry")));
+        mockMvc.perform(get("/card/10").principal(() -> "user1"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.message").value("Database is busy, please retry"));
+    }
+
+    @Test
+    void transfer_passesIdempotencyKey() throws Exception {
+        String body = "{\"fromCardId\":10,\"toCardId\":20,\"amount\":100}";
+        mockMvc.perform(post("/card/transfer").contentType(MediaType.APPLICATION_JSON).content(body)
+                        .header("Idempotency-Key", "retry-42").principal(() -> "user1"))
+                .andExpect(status().isOk());
+        Mockito.verify(cardService).transfer(Mockito.any(TransferDTO.class), Mockito.eq("user1"), Mockito.eq("retry-42"));
+    }
+
+    @Test
+    void transferBatch_returnsResultPerItem() throws Exception {
+        Mockito.when(cardService.transferBatch(Mockito.anyList(), Mockito.eq("user1")))
+                .thenReturn(List.of(TransferResult.completed(0, 7L),
+                        TransferResult.rejected(1, "Insufficient balance on source card")));
+        String body = "{\"transfers\":[" +
+                "{\"fromCardId\":10,\"toCardId\":20,\"amount\":100}," +
+                "{\"fromCardId\":10,\"toCardId\":20,\"amount\":999999}]}";
+        mockMvc.perform(post("/card/transfer/batch").contentType(MediaType.APPLICATION_JSON).content(body).principal(() -> "user1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+                .andExpect(jsonPath("$[0].transferId").value(7))
+                .andExpect(jsonPath("$[1].status").value("REJECTED"))
+                .andExpect(jsonPath("$[1].error").value("Insufficient balance on source card"));
+    }
+
+    @Test
+    void transferBatch_invalidItem_returns400() throws Exception {
+        String body = "{\"transfers\":[{\"fromCardId\":10,\"toCardId\":20,\"amount\":-5}]}";
+        mockMvc.perform(post("/card/transfer/batch").contentType(MediaType.APPLICATION_JSON).content(body).principal(() -> "user1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400));
     }
 
     @Test
@@ -0,0 +1,73 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.CardImportResponse;
+import com.example.bankcards.exception.GlobalExceptionHandler;
+import com.example.bankcards.security.JwtAuthFilter;
+import com.example.bankcards.security.JwtUtils;
+import com.example.bankcards.service.CardImportService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = CardImportController.class)
+@AutoConfigureMockMvc(addFilters = false)
+@Import(GlobalExceptionHandler.class)
+public class CardImportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CardImportService cardImportService;
+
+    @MockBean
+    private JwtAuthFilter jwtAuthFilter;
+
+    @MockBean
+    private JwtUtils jwtUtils;
+
+    @Test
+    void importCsv_returnsReport() throws Exception {
+        CardImportResponse report = new CardImportResponse();
+        report.setImported(1);
+        report.setRejected(1);
+        report.setErrors(List.of(new CardImportResponse.RowError(3, "number: Card number must be 16 digits")));
+        Mockito.when(cardImportService.importCards(Mockito.eq(CardImportService.Format.CSV), Mockito.any(InputStream.class)))
+                .thenReturn(report);
+
+        mockMvc.perform(post("/admin/import/cards").contentType("text/csv").content("number,ownerId,expiration,balance\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3));
+    }
+
+    @Test
+    void importNdjson_usesNdjsonFormat() throws Exception {
+        Mockito.when(cardImportService.importCards(Mockito.eq(CardImportService.Format.NDJSON), Mockito.any(InputStream.class)))
+                .thenReturn(new CardImportResponse());
+
+        mockMvc.perform(post("/admin/import/cards").contentType("application/x-ndjson").content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    @Test
+    void importWrongHeader_returns400() throws Exception {
+        Mockito.when(cardImportService.importCards(Mockito.any(), Mockito.any(InputStream.class)))
+                .thenThrow(new IllegalArgumentException("CSV header must be: number,ownerId,expiration,balance"));
+
+        mockMvc.perform(post("/admin/import/cards").contentType("text/csv").content("pan\n"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.exception.GlobalExceptionHandler;
+import com.example.bankcards.security.JwtAuthFilter;
+import com.example.bankcards.security.JwtUtils;
+import com.example.bankcards.service.ExportService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = ExportController.class)
+@AutoConfigureMockMvc(addFilters = false)
+@Import(GlobalExceptionHandler.class)
+public class ExportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ExportService exportService;
+
+    @MockBean
+    private JwtAuthFilter jwtAuthFilter;
+
+    @MockBean
+    private JwtUtils jwtUtils;
+
+    @Test
+    void cards_streamsNdjsonByDefault() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).exportCards(Mockito.eq(ExportService.Format.NDJSON), Mockito.any());
+
+        MvcResult result = mockMvc.perform(get("/admin/export/cards"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"cards.ndjson\""))
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+
+    @Test
+    void transfers_csv() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("id\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).exportTransfers(Mockito.eq(ExportService.Format.CSV), Mockito.any());
+
+        MvcResult result = mockMvc.perform(get("/admin/export/transfers").param("format", "CSV"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv"))
+                .andExpect(content().string("id\n"));
+    }
+
+    @Test
+    void unknownFormat_returns400() throws Exception {
+        mockMvc.perform(get("/admin/export/cards").param("format", "XML"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.bankcards.repository;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Проверяет по EXPLAIN, что фильтры списка карт идут по индексам из 012-add-cards-filter-indexes.
+ * Встроенная H2 в режиме PostgreSQL заменяет Postgres. Объясняется SQL, который Hibernate сгенерировал для
+ * методов CardRepository (перехват лога org.hibernate.SQL), со статистикой планировщика после ANALYZE
+ * по данным с реалистичным распределением.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardIndexPlanTest {
+
+    private static final long STATUS_ID = 1L;
+    private static final int OWNERS = 50;
+    private static final int CARDS_PER_OWNER = 40;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CardRepository cardRepository;
+
+    private long ownerId;
+
+    @BeforeEach
+    void seed() {
+        String prefix = "plan-owner-";
+        Long existing = jdbcTemplate.queryForObject(
+                "SELECT MIN(id) FROM users WHERE username LIKE ?", Long.class, prefix + "%");
+        if (existing != null) {
+            ownerId = existing;
+            return;
+        }
+        List<Long> statusIds = jdbcTemplate.queryForList("SELECT id FROM card_status ORDER BY id", Long.class);
+        List<Object[]> cards = new ArrayList<>();
+        for (int u = 0; u < OWNERS; u++) {
+            jdbcTemplate.update("INSERT INTO users (username, password, role) VALUES (?, 'hash', 'USER')", prefix + u);
+            long userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, prefix + u);
+            for (int i = 0; i < CARDS_PER_OWNER; i++) {
+                cards.add(new Object[]{"plan-" + u + "-" + i, userId, Date.valueOf("2030-01-01"),
+                        statusIds.get(i % statusIds.size()), 0L});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO cards (number, owner_id, expiration, status_id, balance) " +
+                "VALUES (?, ?, ?, ?, ?)", cards);
+        jdbcTemplate.execute("ANALYZE");
+        ownerId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM users WHERE username LIKE ?", Long.class, prefix + "%");
+    }
+
+    @Test
+    void ownerFilter_usesOwnerIndex() {
+        assertPlanLooksUp("owner_id = ?1", () -> cardRepository.findViewsByOwner(ownerId, PageRequest.of(0, 20)));
+        assertPlanUses("ix_cards_owner_id", () -> cardRepository.scrollViewsByOwner(ownerId, 0L, Limit.of(21)));
+    }
+
+    @Test
+    void statusFilter_usesStatusIndex() {
+        assertPlanLooksUp("status_id = ?1", () -> cardRepository.findViewsByStatus(STATUS_ID, PageRequest.of(0, 20)));
+        assertPlanUses("ix_cards_status_id", () -> cardRepository.scrollViewsByStatus(STATUS_ID, 0L, Limit.of(21)));
+    }
+
+    @Test
+    void ownerAndStatusFilter_usesCompositeIndex() {
+        assertPlanUses("ix_cards_owner_status_id",
+                () -> cardRepository.findViewsByOwnerAndStatus(ownerId, STATUS_ID, PageRequest.of(0, 20)));
+        assertPlanUses("ix_cards_owner_status_id",
+                () -> cardRepository.scrollViewsByOwnerAndStatus(ownerId, STATUS_ID, 0L, Limit.of(21)));
+    }
+
+    private void assertPlanUses(String index, Runnable repositoryCall) {
+        assertPlan(repositoryCall, plan -> plan.toLowerCase().contains(index), "index " + index);
+    }
+
+    // H2 сама индексирует внешние ключи и для страниц без условия по id может выбрать такой индекс вместо
+    // (owner_id, id) — в PostgreSQL его нет. Здесь важно, что cards читается поиском по индексу, а не проходом
+    private void assertPlanLooksUp(String condition, Runnable repositoryCall) {
+        assertPlan(repositoryCall, plan -> plan.contains(": " + condition + " */") && !plan.contains("cards.tableScan"),
+                "index lookup " + condition);
+    }
+
+    // EXPLAIN первой команды, которую выполнил вызов репозитория; параметры H2 показывает как ?1, ?2
+    private void assertPlan(Runnable repositoryCall, Predicate<String> check, String expected) {
+        String sql = capturedSql(repositoryCall).get(0);
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+        Assertions.assertTrue(check.test(plan), () -> "Expected " + expected + " in plan of\n" + sql + "\n" + plan);
+    }
+
+    private static List<String> capturedSql(Runnable repositoryCall) {
+        Logger sqlLogger = (Logger) LoggerFactory.getLogger("org.hibernate.SQL");
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        Level level = sqlLogger.getLevel();
+        sqlLogger.addAppender(appender);
+        sqlLogger.setLevel(Level.DEBUG);
+        try {
+            repositoryCall.run();
+        } finally {
+            sqlLogger.setLevel(level);
+            sqlLogger.detachAppender(appender);
+        }
+        return appender.list.stream().map(ILoggingEvent::getFormattedMessage).toList();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.JwtProperties;
+import com.example.bankcards.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JwtAuthFilterTest {
+
+    private JwtUtils jwtUtils;
+    private CustomUserDetailsService userDetailsService;
+    private TokenRevocationRegistry revocationRegistry;
+    private SimpleMeterRegistry meterRegistry;
+    private JwtAuthFilter filter;
+
+    @BeforeEach
+    void setup() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("yourSuperSecretKeyForJWTGeneration1234567890");
+        properties.setAccessExpirationMs(900_000L);
+        properties.setRefreshExpirationMs(604_800_000L);
+        properties.setStatelessAuth(true);
+        jwtUtils = new JwtUtils(properties);
+        userDetailsService = Mockito.mock(CustomUserDetailsService.class);
+        revocationRegistry = Mockito.mock(TokenRevocationRegistry.class);
+
+        filter = new JwtAuthFilter();
+        ReflectionTestUtils.setField(filter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(filter, "revocationRegistry", revocationRegistry);
+        ReflectionTestUtils.setField(filter, "jwtProperties", properties);
+        meterRegistry = new SimpleMeterRegistry();
+        filter.setMeterRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void statelessMode_authenticatesFromClaimsWithoutUserLookup() throws Exception {
+        String token = jwtUtils.generateAccessToken(new UserPrincipal(1L, "user1", "pwd", User.Role.ADMIN));
+
+        filter.doFilter(requestWithToken(token), new MockHttpServletResponse(), new MockFilterChain());
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        Assertions.assertNotNull(auth);
+        Assertions.assertEquals("user1", auth.getName());
+        Assertions.assertEquals("ROLE_ADMIN", auth.getAuthorities().iterator().next().getAuthority());
+        Mockito.verifyNoInteractions(userDetailsService);
+        Assertions.assertEquals(1, meterRegistry.get("jwt.verify").tag("outcome", "valid").timer().count());
+    }
+
+    @Test
+    void statelessMode_rejectsRevokedToken() throws Exception {
+        String token = jwtUtils.generateAccessToken(new UserPrincipal(1L, "user1", "pwd", User.Role.ADMIN));
+        Mockito.when(revocationRegistry.isRevoked(Mockito.eq(1L), Mockito.any())).thenReturn(true);
+
+        filter.doFilter(requestWithToken(token), new MockHttpServletResponse(), new MockFilterChain());
+
+        Assertions.assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void malformedToken_leavesRequestUnauthenticated() throws Exception {
+        filter.doFilter(requestWithToken("garbage"), new MockHttpServletResponse(), new MockFilterChain());
+
+        Assertions.assertNull(SecurityContextHolder.getContext().getAuthentication());
+        Mockito.verifyNoInteractions(userDetailsService);
+    }
+
+    private MockHttpServletRequest requestWithToken(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/card");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.JwtProperties;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+
+public class JwtUtilsTest {
+
+    private JwtUtils jwtUtils;
+    private UserDetails user;
+
+    @BeforeEach
+    void setup() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("yourSuperSecretKeyForJWTGeneration1234567890");
+        properties.setAccessExpirationMs(900_000L);
+        properties.setRefreshExpirationMs(604_800_000L);
+        jwtUtils = new JwtUtils(properties);
+        user = User.withUsername("user1").password("secret").roles("USER").build();
+    }
+
+    @Test
+    void parseClaims_validToken_returnsSameClaimsFromCache() {
+        String token = jwtUtils.generateAccessToken(user);
+
+        Optional<Claims> first = jwtUtils.parseClaims(token);
+        Optional<Claims> second = jwtUtils.parseClaims(token);
+
+        Assertions.assertTrue(first.isPresent());
+        Assertions.assertEquals("user1", first.get().getSubject());
+        Assertions.assertSame(first.get(), second.get());
+        Assertions.assertTrue(jwtUtils.isTokenValid(token, user));
+    }
+
+    @Test
+    void parseClaims_tamperedOrMalformedToken_isEmpty() {
+        String token = jwtUtils.generateAccessToken(user);
+        jwtUtils.parseClaims(token);
+
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + parts[1] + "x." + parts[2];
+
+        Assertions.assertTrue(jwtUtils.parseClaims(forged).isEmpty());
+        Assertions.assertTrue(jwtUtils.parseClaims("not-a-jwt").isEmpty());
+        Assertions.assertTrue(jwtUtils.parseClaims("").isEmpty());
+        Assertions.assertFalse(jwtUtils.isTokenValid("a.b.c", user));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.JwtProperties;
+import com.example.bankcards.entity.TokenRevocation;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.TokenRevocationRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+public class TokenRevocationRegistryTest {
+
+    private JwtUtils jwtUtils;
+    private TokenRevocationRepository repository;
+    private UserRepository userRepository;
+    private UserCache userCache;
+    private TokenRevocationRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("yourSuperSecretKeyForJWTGeneration1234567890");
+        properties.setAccessExpirationMs(900_000L);
+        properties.setRefreshExpirationMs(604_800_000L);
+        jwtUtils = new JwtUtils(properties);
+        repository = Mockito.mock(TokenRevocationRepository.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        userCache = new UserCache(userRepository, Mockito.mock(PlatformTransactionManager.class),
+                Mockito.mock(ObjectProvider.class), 60_000L, 100L);
+        registry = new TokenRevocationRegistry(repository, properties, userCache);
+    }
+
+    @Test
+    void tokenIssuedInTheSameSecondAsRevocation_isRevoked() throws InterruptedException {
+        // Начинаем в первой половине секунды, чтобы выдача и отзыв точно попали в одну секунду
+        while (System.currentTimeMillis() % 1000 > 500) {
+            Thread.sleep(10);
+        }
+        String token = jwtUtils.generateAccessToken(new UserPrincipal(1L, "user1", "pwd", User.Role.ADMIN));
+        registry.revoke(1L);
+
+        Claims claims = jwtUtils.parseClaims(token).orElseThrow();
+        Assertions.assertEquals(Instant.now().truncatedTo(ChronoUnit.SECONDS), claims.getIssuedAt().toInstant());
+        Assertions.assertTrue(registry.isRevoked(1L, claims.getIssuedAt()));
+        Assertions.assertFalse(registry.isRevoked(2L, claims.getIssuedAt()));
+    }
+
+    @Test
+    void pollingRevocationFromAnotherInstance_evictsCachedUser() {
+        Mockito.when(userRepository.findByUsername("u1"))
+                .thenReturn(Optional.of(user(User.Role.ADMIN)))
+                .thenReturn(Optional.of(user(User.Role.USER)));
+        Assertions.assertEquals(User.Role.ADMIN, userCache.findByUsername("u1").get().role());
+
+        // Роль понизили на другом инстансе: здесь есть только строка token_revocations
+        TokenRevocation revocation = new TokenRevocation();
+        revocation.setUserId(1L);
+        revocation.setNotBefore(LocalDateTime.now());
+        Mockito.when(repository.findByNotBeforeAfter(Mockito.any())).thenReturn(List.of(revocation));
+        registry.poll();
+
+        Assertions.assertEquals(User.Role.USER, userCache.findByUsername("u1").get().role());
+    }
+
+    private static User user(User.Role role) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        user.setPassword("hash");
+        user.setRole(role);
+        return user;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Промах кэша пользователей внутри read-only транзакции без реплик не берёт второе соединение:
+ * с пулом из одного соединения список карт на холодном кэше отвечает, а не ждёт connection-timeout.
+ */
+@SpringBootTest(properties = {"spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=250",
+        // Отдельный контекст — отдельная база, общую уже разметил Liquibase другого контекста
+        "spring.datasource.url=jdbc:h2:mem:bankcards-user-cache-pool;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;LOCK_TIMEOUT=10000"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class UserCachePoolTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtils jwtUtils;
+    @Autowired
+    private UserRepository userRepository;
+
+    private String token;
+
+    @BeforeEach
+    void setup() {
+        User user = new User();
+        user.setUsername("pool-" + System.nanoTime());
+        user.setPassword("hash");
+        user.setRole(User.Role.USER);
+        user = userRepository.save(user);
+        token = jwtUtils.generateAccessToken(new UserPrincipal(user.getId(), user.getUsername(), "hash", User.Role.USER));
+    }
+
+    @Test
+    void cardList_onColdCache_needsOneConnection() throws Exception {
+        mockMvc.perform(get("/card").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").isArray());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+public class UserCacheTest {
+
+    private UserRepository userRepository;
+    private UserCache userCache;
+
+    @BeforeEach
+    void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        userCache = new UserCache(userRepository, Mockito.mock(PlatformTransactionManager.class),
+                Mockito.mock(ObjectProvider.class), 60_000L, 100L);
+    }
+
+    @Test
+    void findByUsername_cachesAndCountsHitsAndMisses() {
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user(User.Role.USER)));
+
+        userCache.findByUsername("u1");
+        userCache.findByUsername("u1");
+
+        Mockito.verify(userRepository, Mockito.times(1)).findByUsername("u1");
+        Assertions.assertEquals(1, userCache.stats().hitCount());
+        Assertions.assertEquals(1, userCache.stats().missCount());
+    }
+
+    @Test
+    void evict_forcesReloadSoDemotionIsVisible() {
+        Mockito.when(userRepository.findByUsername("u1"))
+                .thenReturn(Optional.of(user(User.Role.ADMIN)))
+                .thenReturn(Optional.of(user(User.Role.USER)));
+
+        Assertions.assertEquals(User.Role.ADMIN, userCache.findByUsername("u1").get().role());
+        userCache.evict("u1");
+        Assertions.assertEquals(User.Role.USER, userCache.findByUsername("u1").get().role());
+    }
+
+    @Test
+    void loadRacingWithEvict_isNotCached() {
+        Mockito.when(userRepository.findByUsername("u1"))
+                .thenAnswer(inv -> {
+                    // Пользователя удалили, пока шла загрузка старой версии
+                    userCache.evict("u1");
+                    return Optional.of(user(User.Role.ADMIN));
+                })
+                .thenReturn(Optional.empty());
+
+        userCache.findByUsername("u1");
+
+        Assertions.assertTrue(userCache.findByUsername("u1").isEmpty());
+    }
+
+    private User user(User.Role role) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        user.setPassword("hash");
+        user.setRole(role);
+        return user;
+    }
+}
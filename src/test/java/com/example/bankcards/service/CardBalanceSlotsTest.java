@@ -0,0 +1,223 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разделённый баланс на H2: зачисления расходятся по слотам, чтение и списание учитывают слоты,
+ * консолидация и смена числа слотов сохраняют полный баланс.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardBalanceSlotsTest {
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardBalanceSlots cardBalanceSlots;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String username;
+    private User owner;
+    private Long sourceId;
+    private Long hotId;
+
+    @BeforeEach
+    void setup() {
+        long suffix = System.nanoTime();
+        owner = new User();
+        owner.setUsername("slots-user-" + suffix);
+        owner.setPassword("hash");
+        owner.setRole(User.Role.USER);
+        owner = userRepository.save(owner);
+        username = owner.getUsername();
+
+        sourceId = saveCard(suffix, 0, 10_000L);
+        hotId = saveCard(suffix, 1, 0L);
+        cardService.setBalanceSlots(hotId, 4);
+    }
+
+    @Test
+    void credits_goToSlots_andReadsIncludeThem() {
+        for (int i = 0; i < 10; i++) {
+            cardService.transfer(transferDto(sourceId, hotId, 100L), username);
+        }
+
+        Assertions.assertEquals(0L, cardRowBalance(hotId));
+        Assertions.assertEquals(1_000L, slotSum(hotId));
+        Assertions.assertEquals(1_000L, cardService.getCardById(hotId, username).getBalance());
+        Assertions.assertEquals(9_000L, cardService.getCardById(sourceId, username).getBalance());
+    }
+
+    @Test
+    void debit_consolidatesSlots_whenCardRowIsShort() {
+        for (int i = 0; i < 5; i++) {
+            cardService.transfer(transferDto(sourceId, hotId, 200L), username);
+        }
+
+        cardService.transfer(transferDto(hotId, sourceId, 700L), username);
+
+        Assertions.assertEquals(300L, cardRowBalance(hotId));
+        Assertions.assertEquals(0L, slotSum(hotId));
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> cardService.transfer(transferDto(hotId, sourceId, 301L), username));
+        Assertions.assertEquals("Insufficient balance on source card", e.getMessage());
+    }
+
+    @Test
+    void consolidationAndResize_keepTotalBalance() {
+        for (int i = 0; i < 8; i++) {
+            cardService.transfer(transferDto(sourceId, hotId, 50L), username);
+        }
+
+        cardBalanceSlots.consolidateAll();
+        Assertions.assertEquals(400L, cardRowBalance(hotId));
+        Assertions.assertEquals(0L, slotSum(hotId));
+
+        cardService.transfer(transferDto(sourceId, hotId, 100L), username);
+        Assertions.assertEquals(500L, cardService.setBalanceSlots(hotId, 2).getBalance());
+        Assertions.assertEquals(2, slotRows(hotId));
+        Assertions.assertEquals(500L, cardRowBalance(hotId));
+
+        cardService.setBalanceSlots(hotId, 0);
+        Assertions.assertEquals(0, slotRows(hotId));
+        cardService.transfer(transferDto(sourceId, hotId, 100L), username);
+        Assertions.assertEquals(600L, cardRowBalance(hotId));
+    }
+
+    @Test
+    void concurrentCredits_toSlottedCard_addUp() throws Exception {
+        int clients = 4;
+        int transfersPerClient = 25;
+        List<Long> sources = new ArrayList<>();
+        long suffix = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            sources.add(saveCard(suffix, 2 + c, 1_000L));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long source : sources) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < transfersPerClient; i++) {
+                        cardService.transfer(transferDto(source, hotId, 10L), username);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assertions.assertEquals(clients * transfersPerClient * 10L, cardService.getCardById(hotId, username).getBalance());
+        Assertions.assertEquals(0L, cardRowBalance(hotId));
+    }
+
+    @Test
+    void concurrentOppositeTransfers_betweenSlottedAndPlainCard_doNotDeadlock() throws Exception {
+        long suffix = System.nanoTime();
+        Long plainId = saveCard(suffix, 6, 1_000L);
+        Long slottedId = saveCard(suffix, 7, 1_000L);
+        cardService.setBalanceSlots(slottedId, 4);
+        int transfersPerClient = 25;
+        // Встречные переводы: у карты со слотами блокируются и слоты (списание), и слот (зачисление)
+        List<TransferDTO> directions = List.of(transferDto(plainId, slottedId, 1L), transferDto(slottedId, plainId, 1L),
+                transferDto(plainId, slottedId, 1L), transferDto(slottedId, plainId, 1L));
+
+        ExecutorService pool = Executors.newFixedThreadPool(directions.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (TransferDTO direction : directions) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    long slowest = 0;
+                    for (int i = 0; i < transfersPerClient; i++) {
+                        long begin = System.nanoTime();
+                        cardService.transfer(direction, username);
+                        slowest = Math.max(slowest, System.nanoTime() - begin);
+                    }
+                    return slowest;
+                }));
+            }
+            start.countDown();
+            for (Future<Long> future : futures) {
+                // Взаимная блокировка ждала бы LOCK_TIMEOUT тестовой базы (10 с) перед повтором
+                long slowestMs = TimeUnit.NANOSECONDS.toMillis(future.get(2, TimeUnit.MINUTES));
+                Assertions.assertTrue(slowestMs < 5_000, "Slowest transfer took " + slowestMs + " ms");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assertions.assertEquals(1_000L, cardService.getCardById(plainId, username).getBalance());
+        Assertions.assertEquals(1_000L, cardService.getCardById(slottedId, username).getBalance());
+    }
+
+    private Long saveCard(long suffix, int index, Long balance) {
+        Card card = new Card();
+        String number = String.format("5%03d%012d", index, suffix % 1_000_000_000_000L);
+        card.setNumber(cardEncryptor.encrypt(number));
+        card.setNumberLast4(number.substring(12));
+        card.setOwner(owner);
+        card.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+        card.setStatus(cardStatusRegistry.get(CardStatus.Code.ACTIVE));
+        card.setBalance(balance);
+        return cardRepository.save(card).getId();
+    }
+
+    private long cardRowBalance(Long cardId) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM cards WHERE id = ?", Long.class, cardId);
+    }
+
+    private long slotSum(Long cardId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(balance), 0) FROM card_balance_slots WHERE card_id = ?", Long.class, cardId);
+    }
+
+    private int slotRows(Long cardId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM card_balance_slots WHERE card_id = ?", Integer.class, cardId);
+    }
+
+    private static TransferDTO transferDto(Long fromId, Long toId, Long amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setFromCardId(fromId);
+        dto.setToCardId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+}
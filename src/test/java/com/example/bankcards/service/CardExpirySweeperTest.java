@@ -0,0 +1,180 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.TokenRevocationRegistry;
+import com.example.bankcards.util.CardEncryptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проход по истёкшим картам на H2 порциями по 2: просроченные ACTIVE и BLOCKED становятся EXPIRED,
+ * действующие не меняются; каждый проход заново находит карты, вернувшиеся в ACTIVE.
+ * Плановый проход не занимает поток планировщика, нужный опросу отзывов токенов.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardExpirySweeperTest {
+
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TokenRevocationRegistry tokenRevocationRegistry;
+
+    private CardExpirySweeper sweeper;
+    private User owner;
+    private long suffix;
+
+    @BeforeEach
+    void setup() {
+        sweeper = new CardExpirySweeper(cardRepository, cardStatusRegistry, dataSource, transactionManager,
+                true, 2, 0L, 1L);
+        suffix = System.nanoTime() % 1_000_000_000_000L;
+        owner = new User();
+        owner.setUsername("expiry-user-" + suffix);
+        owner.setPassword("hash");
+        owner.setRole(User.Role.USER);
+        owner = userRepository.save(owner);
+    }
+
+    @Test
+    void sweep_expiresPastDueCardsInChunks() {
+        LocalDate today = LocalDate.now();
+        List<Long> pastDue = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            pastDue.add(saveCard(i, today.minusDays(1 + i), CardStatus.Code.ACTIVE));
+        }
+        pastDue.add(saveCard(4, today.minusYears(1), CardStatus.Code.BLOCKED));
+        pastDue.add(saveCard(5, today, CardStatus.Code.ACTIVE));
+        Long valid = saveCard(6, today.plusDays(1), CardStatus.Code.ACTIVE);
+
+        long expired = sweeper.sweep();
+
+        Assertions.assertTrue(expired >= pastDue.size());
+        for (Long id : pastDue) {
+            Assertions.assertEquals("EXPIRED", statusOf(id));
+        }
+        Assertions.assertEquals("ACTIVE", statusOf(valid));
+        CardExpirySweeper.SweepStats stats = sweeper.stats();
+        Assertions.assertFalse(stats.running());
+        Assertions.assertEquals(1, stats.runs());
+        Assertions.assertEquals(expired, stats.lastRunExpired());
+        Assertions.assertEquals(expired, stats.totalExpired());
+    }
+
+    @Test
+    void repeatedSweep_picksUpReactivatedCards() {
+        Long card = saveCard(0, LocalDate.now().minusDays(3), CardStatus.Code.ACTIVE);
+        sweeper.sweep();
+        jdbcTemplate.update("UPDATE cards SET status_id = ? WHERE id = ?",
+                cardStatusRegistry.get(CardStatus.Code.ACTIVE).getId(), card);
+
+        sweeper.sweep();
+
+        Assertions.assertEquals("EXPIRED", statusOf(card));
+        Assertions.assertEquals(2, sweeper.stats().runs());
+        Assertions.assertTrue(sweeper.stats().totalExpired() >= 2);
+    }
+
+    @Test
+    void expireAll_skipsCardsExtendedAfterTheKeyScan() {
+        LocalDate before = LocalDate.now().plusDays(1);
+        Long expiredStatusId = cardStatusRegistry.get(CardStatus.Code.EXPIRED).getId();
+        Long card = saveCard(0, LocalDate.now().minusDays(3), CardStatus.Code.ACTIVE);
+        // Срок продлили между чтением ключей и обновлением порции
+        jdbcTemplate.update("UPDATE cards SET expiration = ? WHERE id = ?", Date.valueOf(LocalDate.now().plusYears(1)), card);
+
+        Assertions.assertEquals(0, cardRepository.expireAll(List.of(card), before, expiredStatusId));
+        Assertions.assertEquals("ACTIVE", statusOf(card));
+    }
+
+    @Test
+    void scheduledSweep_doesNotHoldTheSchedulerThread() throws Exception {
+        // Как у Spring Boot по умолчанию: один поток планировщика на все @Scheduled-задачи
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        CountDownLatch sweeping = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CardRepository blockingRepository = Mockito.mock(CardRepository.class);
+        Mockito.when(blockingRepository.findExpiryKeys(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    sweeping.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                    return List.of();
+                });
+        CardExpirySweeper slowSweeper = new CardExpirySweeper(blockingRepository, cardStatusRegistry, dataSource,
+                transactionManager, true, 2, 0L, 1L);
+        AtomicInteger polls = new AtomicInteger();
+        try {
+            scheduler.scheduleWithFixedDelay(slowSweeper::scheduledSweep, Instant.now(), Duration.ofHours(1));
+            Assertions.assertTrue(sweeping.await(5, TimeUnit.SECONDS));
+            scheduler.scheduleWithFixedDelay(() -> {
+                tokenRevocationRegistry.poll();
+                polls.incrementAndGet();
+            }, Duration.ofMillis(20));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (polls.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(polls.get() >= 3, "revocation poll must keep running during a sweep");
+            Assertions.assertTrue(slowSweeper.stats().running());
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+            slowSweeper.shutdown();
+        }
+    }
+
+    private Long saveCard(int index, LocalDate expiration, CardStatus.Code status) {
+        Card card = new Card();
+        String number = String.format("3%03d%012d", index, suffix);
+        card.setNumber(cardEncryptor.encrypt(number));
+        card.setNumberLast4(number.substring(12));
+        card.setOwner(owner);
+        card.setExpiration(Date.valueOf(expiration));
+        card.setStatus(cardStatusRegistry.get(status));
+        card.setBalance(0L);
+        return cardRepository.save(card).getId();
+    }
+
+    private String statusOf(Long cardId) {
+        return jdbcTemplate.queryForObject("SELECT s.name FROM cards c JOIN card_status s ON s.id = c.status_id " +
+                "WHERE c.id = ?", String.class, cardId);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardImportResponse;
+import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Импорт на H2: ошибочные строки отклоняются с номером строки, остальные вставляются; номера
+ * зашифрованы и ищутся по хэшу, id из cards_seq не пересекаются с обычным созданием карт.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardImportServiceTest {
+
+    @Autowired
+    private CardImportService cardImportService;
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+
+    private Long ownerId;
+    private long suffix;
+
+    @BeforeEach
+    void setup() {
+        suffix = System.nanoTime() % 1_000_000_000_000L;
+        User owner = new User();
+        owner.setUsername("import-user-" + suffix);
+        owner.setPassword("hash");
+        owner.setRole(User.Role.USER);
+        ownerId = userRepository.save(owner).getId();
+    }
+
+    @Test
+    void csv_importsValidRows_andReportsRowErrors() throws Exception {
+        String existing = number(9);
+        cardService.createCard(cardDto(existing));
+
+        String csv = String.join("\n",
+                "number,ownerId,expiration,balance",
+                number(1) + "," + ownerId + ",2030-01-31,100",
+                "1234," + ownerId + ",2030-01-31,0",
+                number(2) + ",-1,2030-01-31,0",
+                number(3) + "," + ownerId + ",2020-05-31,0",
+                number(1) + "," + ownerId + ",2030-01-31,0",
+                existing + "," + ownerId + ",2030-01-31,0",
+                number(4) + "," + ownerId + ",31.01.2030,0",
+                "",
+                number(5) + "," + ownerId + ",2030-01-31,50");
+
+        CardImportResponse response = importCards(CardImportService.Format.CSV, csv);
+
+        Assertions.assertEquals(3, response.getImported());
+        Assertions.assertEquals(5, response.getRejected());
+        Map<Long, String> errors = response.getErrors().stream()
+                .collect(Collectors.toMap(CardImportResponse.RowError::getLine, CardImportResponse.RowError::getError));
+        Assertions.assertEquals("number: Card number must be 16 digits", errors.get(3L));
+        Assertions.assertEquals("User not found: -1", errors.get(4L));
+        Assertions.assertEquals("Card with this number already exists", errors.get(6L));
+        Assertions.assertEquals("Card with this number already exists", errors.get(7L));
+        Assertions.assertEquals("expiration: expected yyyy-MM-dd", errors.get(8L));
+
+        CardResponse imported = cardService.findCardByNumber(number(1));
+        Assertions.assertEquals("**** **** **** " + number(1).substring(12), imported.getCardNumber());
+        Assertions.assertEquals(100L, imported.getBalance());
+        Assertions.assertEquals("ACTIVE", imported.getStatus());
+        Assertions.assertEquals(number(1), cardEncryptor.decrypt(cardRepository.findById(imported.getId()).orElseThrow().getNumber()));
+        Assertions.assertEquals("EXPIRED", cardService.findCardByNumber(number(3)).getStatus());
+    }
+
+    @Test
+    void ndjson_skipsMalformedLines_andIdsDoNotCollideWithCreateCard() throws Exception {
+        String ndjson = String.join("\n",
+                "{\"number\":\"" + number(6) + "\",\"ownerId\":" + ownerId + ",\"expiration\":\"2031-06-30\",\"balance\":0}",
+                "{\"number\":",
+                "{\"number\":\"" + number(7) + "\",\"ownerId\":" + ownerId + ",\"expiration\":\"2031-06-30\"}");
+
+        CardImportResponse response = importCards(CardImportService.Format.NDJSON, ndjson);
+
+        Assertions.assertEquals(1, response.getImported());
+        Assertions.assertEquals(List.of(2L, 3L), response.getErrors().stream().map(CardImportResponse.RowError::getLine).toList());
+        Assertions.assertTrue(response.getErrors().get(0).getError().startsWith("Malformed JSON"));
+        Assertions.assertEquals("balance: must not be null", response.getErrors().get(1).getError());
+
+        Long importedId = cardService.findCardByNumber(number(6)).getId();
+        Long createdId = cardService.createCard(cardDto(number(8))).getId();
+        Assertions.assertNotEquals(importedId, createdId);
+    }
+
+    @Test
+    void csv_rejectsWrongHeader() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> importCards(CardImportService.Format.CSV, "pan,owner\n" + number(1) + "," + ownerId));
+    }
+
+    private CardImportResponse importCards(CardImportService.Format format, String body) throws Exception {
+        return cardImportService.importCards(format, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String number(int index) {
+        return String.format("4%03d%012d", index, suffix);
+    }
+
+    private CardDTO cardDto(String number) {
+        CardDTO dto = new CardDTO();
+        dto.setNumber(number);
+        dto.setOwnerId(ownerId);
+        dto.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+        dto.setBalance(0L);
+        return dto;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardSliceResponse;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Фиксирует число SQL-команд на чтение карт: страница и карта по id — одна команда,
+ * без догрузки владельцев и статусов (N+1).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardQueryCountTest {
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private String owner;
+    private String admin;
+    private List<Long> cardIds;
+
+    @BeforeEach
+    void setup() {
+        // Статистика включается только здесь: generate_statistics на весь контекст печатал бы
+        // Session Metrics каждой сессии во всех тестах
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        long suffix = System.nanoTime();
+        cardIds = new ArrayList<>();
+        // Карты у нескольких владельцев и в разных статусах — N+1 проявился бы как лишние select
+        for (int u = 0; u < 3; u++) {
+            User user = saveUser("count-user" + u + "-" + suffix, User.Role.USER);
+            if (u == 0) {
+                owner = user.getUsername();
+            }
+            for (CardStatus.Code code : CardStatus.Code.values()) {
+                Card card = new Card();
+                String number = String.format("4%03d%012d", u, suffix % 1_000_000_000_000L + code.ordinal());
+                card.setNumber(cardEncryptor.encrypt(number));
+                card.setNumberLast4(number.substring(12));
+                card.setOwner(user);
+                card.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+                card.setStatus(cardStatusRegistry.get(code));
+                card.setBalance(100L);
+                cardIds.add(cardRepository.save(card).getId());
+            }
+        }
+        admin = saveUser("count-admin-" + suffix, User.Role.ADMIN).getUsername();
+
+        // Прогрев кеша пользователей, чтобы считать только запросы к картам
+        cardService.scrollCards(null, owner, null, 1, admin);
+        cardService.scrollCards(null, null, null, 1, owner);
+    }
+
+    @AfterEach
+    void disableStatistics() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void scrollPage_isOneStatement() {
+        statistics.clear();
+        CardSliceResponse slice = cardService.scrollCards(null, null, null, 50, admin);
+
+        Assertions.assertTrue(slice.getItems().size() >= cardIds.size());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void filteredScrollPage_isOneStatement() {
+        statistics.clear();
+        CardSliceResponse slice = cardService.scrollCards(CardStatus.Code.ACTIVE, owner, null, 50, admin);
+
+        Assertions.assertEquals(1, slice.getItems().size());
+        Assertions.assertEquals("ACTIVE", slice.getItems().get(0).getStatus());
+        Assertions.assertEquals(owner, slice.getItems().get(0).getOwner());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void offsetPage_isSelectPlusCount() {
+        statistics.clear();
+        Page<CardResponse> page = cardService.getCards(null, null, PageRequest.of(0, 2), owner);
+
+        Assertions.assertEquals(3, page.getTotalElements());
+        Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getById_isOneStatement() {
+        statistics.clear();
+        CardResponse card = cardService.getCardById(cardIds.get(0), owner);
+
+        Assertions.assertEquals(owner, card.getOwner());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    private User saveUser(String username, User.Role role) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("hash");
+        user.setRole(role);
+        return userRepository.save(user);
+    }
+}
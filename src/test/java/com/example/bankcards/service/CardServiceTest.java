@@ -1,19 +1,46 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardResponse;
+import com.example.bankcards.dto.CardSliceResponse;
+import com.example.bankcards.dto.CardView;
 import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferHistoryResponse;
+import com.example.bankcards.dto.TransferResponse;
+import com.example.bankcards.dto.TransferResult;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.IdempotencyKey;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardBalanceBatchRepository.BalanceChange;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.CardStatusRepository;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
 import com.example.bankcards.repository.TransferRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserCache;
+import com.example.bankcards.util.CardCursor;
 import com.example.bankcards.util.CardEncryptor;
+import com.example.bankcards.util.CardNumberHasher;
+import com.example.bankcards.util.TransferCursor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class CardServiceTest {
@@ -21,8 +48,12 @@ public class CardServiceTest {
     private CardRepository cardRepository;
     private UserRepository userRepository;
     private CardStatusRepository cardStatusRepository;
+    private CardStatusRegistry cardStatusRegistry;
     private TransferRepository transferRepository;
     private CardEncryptor cardEncryptor;
+    private CardNumberHasher cardNumberHasher;
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+    private SimpleMeterRegistry meterRegistry;
     private CardService cardService;
 
     @BeforeEach
@@ -30,83 +61,473 @@ public class CardServiceTest {
         cardRepository = Mockito.mock(CardRepository.class);
         userRepository = Mockito.mock(UserRepository.class);
         cardStatusRepository = Mockito.mock(CardStatusRepository.class);
+        Mockito.when(cardStatusRepository.findAll()).thenReturn(List.of(
+                status(1L, "ACTIVE"), status(2L, "BLOCKED"), status(3L, "EXPIRED")));
+        cardStatusRegistry = new CardStatusRegistry(cardStatusRepository);
         transferRepository = Mockito.mock(TransferRepository.class);
         cardEncryptor = Mockito.mock(CardEncryptor.class);
-        cardService = new CardService(cardRepository, userRepository, cardStatusRepository, transferRepository, cardEncryptor);
+        cardNumberHasher = new CardNumberHasher("testIndexKey0123456789");
+        idempotencyKeyRepository = Mockito.mock(IdempotencyKeyRepository.class);
+        PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cardService = new CardService(cardRepository, userRepository, cardStatusRegistry, transferRepository,
+                cardEncryptor, cardNumberHasher,
+                new UserCache(userRepository, transactionManager, Mockito.mock(ObjectProvider.class), 60_000L, 100L),
+                new IdempotencyKeyStore(idempotencyKeyRepository, transactionManager, 60_000L, 100L, 100),
+                new TransferShardExecutor(transactionManager, meterRegistry, false, 0, 0, 0),
+                new CardBalanceSlots(cardRepository, transactionManager, 64, 60_000L, 100L, 100),
+                transactionManager, meterRegistry, 3, 1L, 500);
     }
 
     @Test
-    void transfer_success_updatesBalancesAndSavesTransfer() {
+    void transfer_success_debitsCreditsAndSavesTransfer() {
         String username = "u1";
         User user = new User();
         user.setId(1L);
         user.setUsername(username);
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
 
-        Card from = new Card();
-        from.setId(10L);
-        from.setOwner(user);
-        from.setBalance(1000L);
-        CardStatus active = new CardStatus();
-        active.setName("ACTIVE");
-        from.setStatus(active);
+        Mockito.when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 300L)).thenReturn(1);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 300L)).thenReturn(1);
 
-        Card to = new Card();
-        to.setId(20L);
-        to.setOwner(user);
-        to.setBalance(100L);
-        to.setStatus(active);
+        cardService.transfer(transferDto(10L, 20L, 300L), username);
 
-        Mockito.when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
-        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(from));
-        Mockito.when(cardRepository.findById(20L)).thenReturn(Optional.of(to));
-        Mockito.when(cardStatusRepository.findByName("ACTIVE")).thenReturn(Optional.of(active));
+        Mockito.verify(cardRepository, Mockito.never()).findById(Mockito.any());
+        Mockito.verify(cardRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verify(transferRepository, Mockito.times(1)).save(Mockito.any());
+        Assertions.assertEquals(1, transferCount("completed"));
+    }
 
-        TransferDTO dto = new TransferDTO();
-        dto.setFromCardId(10L);
-        dto.setToCardId(20L);
-        dto.setAmount(300L);
+    @Test
+    void transfer_updatesRowsInIdOrder() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
 
-        cardService.transfer(dto, username);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(20L, 1L, active, 50L)).thenReturn(1);
+        Mockito.when(cardRepository.credit(10L, 1L, active, 50L)).thenReturn(1);
 
-        Assertions.assertEquals(700L, from.getBalance());
-        Assertions.assertEquals(400L, to.getBalance());
-        Mockito.verify(transferRepository, Mockito.times(1)).save(Mockito.any());
+        cardService.transfer(transferDto(20L, 10L, 50L), "u1");
+
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).credit(10L, 1L, active, 50L);
+        inOrder.verify(cardRepository).debit(20L, 1L, active, 50L);
     }
 
     @Test
     void transfer_fails_whenInsufficientBalance() {
-        String username = "u1";
         User user = new User();
         user.setId(1L);
-        user.setUsername(username);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
 
-        Card from = new Card();
-        from.setId(10L);
-        from.setOwner(user);
-        from.setBalance(100L);
-        CardStatus active = new CardStatus();
-        active.setName("ACTIVE");
-        from.setStatus(active);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 300L)).thenReturn(0);
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(card(10L, user, active, 100L)));
 
-        Card to = new Card();
-        to.setId(20L);
-        to.setOwner(user);
-        to.setBalance(100L);
-        to.setStatus(active);
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> cardService.transfer(transferDto(10L, 20L, 300L), "u1"));
+        Assertions.assertEquals("Insufficient balance on source card", e.getMessage());
+        Mockito.verify(cardRepository, Mockito.never()).credit(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(transferRepository, Mockito.never()).save(Mockito.any());
+        Assertions.assertEquals(1, transferCount("rejected"));
+        Assertions.assertEquals(0, transferCount("completed"));
+    }
 
-        Mockito.when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
-        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(from));
-        Mockito.when(cardRepository.findById(20L)).thenReturn(Optional.of(to));
-        Mockito.when(cardStatusRepository.findByName("ACTIVE")).thenReturn(Optional.of(active));
+    @Test
+    void transfer_toSlottedCard_creditsSlotInsteadOfCardRow() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
 
-        TransferDTO dto = new TransferDTO();
-        dto.setFromCardId(10L);
-        dto.setToCardId(20L);
-        dto.setAmount(300L);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 300L)).thenReturn(1);
+        Mockito.when(cardRepository.findBalanceSlotsById(20L)).thenReturn(Optional.of(4));
+        Mockito.when(cardRepository.creditSlot(Mockito.eq(20L), Mockito.anyInt(), Mockito.eq(1L),
+                Mockito.eq(active.getId()), Mockito.eq(300L))).thenReturn(1);
+
+        cardService.transfer(transferDto(10L, 20L, 300L), "u1");
+
+        ArgumentCaptor<Integer> slot = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(cardRepository).creditSlot(Mockito.eq(20L), slot.capture(), Mockito.eq(1L),
+                Mockito.eq(active.getId()), Mockito.eq(300L));
+        Assertions.assertTrue(slot.getValue() >= 0 && slot.getValue() < 4);
+        Mockito.verify(cardRepository, Mockito.never()).credit(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(transferRepository, Mockito.times(1)).save(Mockito.any());
+    }
+
+    @Test
+    void transfer_fromSlottedCard_consolidatesSlotsBeforeDebit() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.findBalanceSlotsById(10L)).thenReturn(Optional.of(4));
+        Mockito.when(cardRepository.consolidate(10L)).thenReturn(250L);
+        Mockito.when(cardRepository.debit(10L, 1L, active, 300L)).thenReturn(1);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 300L)).thenReturn(1);
+
+        cardService.transfer(transferDto(10L, 20L, 300L), "u1");
+
+        // Строки cards блокируются раньше слотов — в том же порядке, что и при фоновой консолидации
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).lockAll(Mockito.argThat(ids -> List.copyOf(ids).equals(List.of(10L, 20L))));
+        inOrder.verify(cardRepository).lockSlots(List.of(10L), Map.of());
+        inOrder.verify(cardRepository).consolidate(10L);
+        inOrder.verify(cardRepository).debit(10L, 1L, active, 300L);
+        inOrder.verify(cardRepository).credit(20L, 1L, active, 300L);
+        Mockito.verify(cardRepository, Mockito.never()).findById(Mockito.any());
+    }
+
+    @Test
+    void transfer_toSlottedCard_creditsSlotAfterCardRows() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.findBalanceSlotsById(10L)).thenReturn(Optional.of(4));
+        Mockito.when(cardRepository.debit(20L, 1L, active, 50L)).thenReturn(1);
+        Mockito.when(cardRepository.creditSlot(Mockito.eq(10L), Mockito.anyInt(), Mockito.eq(1L),
+                Mockito.eq(active.getId()), Mockito.eq(50L))).thenReturn(1);
+
+        cardService.transfer(transferDto(20L, 10L, 50L), "u1");
+
+        // Строка карты зачисления со слотами не блокируется, её слот — после строк cards
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).lockAll(Mockito.argThat(ids -> List.copyOf(ids).equals(List.of(20L))));
+        inOrder.verify(cardRepository).lockSlots(Mockito.eq(List.of()), Mockito.argThat(slots -> slots.containsKey(10L)));
+        inOrder.verify(cardRepository).debit(20L, 1L, active, 50L);
+        inOrder.verify(cardRepository).creditSlot(Mockito.eq(10L), Mockito.anyInt(), Mockito.eq(1L),
+                Mockito.eq(active.getId()), Mockito.eq(50L));
+    }
+
+    @Test
+    void transfer_retriesWithConsolidation_whenSlotCountCacheIsStale() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+        Card source = card(10L, user, active, 100L);
+        source.setBalanceSlots(4);
+        source.setSlotBalance(250L);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        // Слоты включили на другом экземпляре, а в кэше ещё 0
+        Mockito.when(cardRepository.findBalanceSlotsById(10L)).thenReturn(Optional.of(0), Optional.of(4));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 300L)).thenReturn(0, 1);
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(source));
+        Mockito.when(cardRepository.consolidate(10L)).thenReturn(250L);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 300L)).thenReturn(1);
+
+        cardService.transfer(transferDto(10L, 20L, 300L), "u1");
+
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).debit(10L, 1L, active, 300L);
+        inOrder.verify(cardRepository).consolidate(10L);
+        inOrder.verify(cardRepository).debit(10L, 1L, active, 300L);
+        Mockito.verify(transferRepository, Mockito.times(1)).save(Mockito.any());
+    }
 
-        Assertions.assertThrows(IllegalStateException.class, () -> cardService.transfer(dto, username));
+    @Test
+    void transfer_fails_whenCardBelongsToAnotherUser() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        User other = new User();
+        other.setId(2L);
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 100L)).thenReturn(1);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 100L)).thenReturn(0);
+        Mockito.when(cardRepository.findById(20L)).thenReturn(Optional.of(card(20L, other, active, 0L)));
+
+        Assertions.assertThrows(SecurityException.class, () -> cardService.transfer(transferDto(10L, 20L, 100L), "u1"));
         Mockito.verify(transferRepository, Mockito.never()).save(Mockito.any());
     }
-}
 
+    @Test
+    void transfer_fails_whenCardNotActive() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+        CardStatus blocked = cardStatusRegistry.get(CardStatus.Code.BLOCKED);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 100L)).thenReturn(0);
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(card(10L, user, blocked, 1000L)));
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> cardService.transfer(transferDto(10L, 20L, 100L), "u1"));
+        Assertions.assertEquals("Both cards must be active for transfer", e.getMessage());
+    }
+
+    @Test
+    void transferBatch_reportsEachItemAndRefundsFailedCredits() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        User other = new User();
+        other.setId(2L);
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        // 0: успешно, 1: та же карта, 2: недостаточно средств, 3: карта получателя чужая
+        Mockito.when(cardRepository.debitAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList()))
+                .thenReturn(new int[]{1, 0, 1});
+        Mockito.when(cardRepository.creditAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList()))
+                .thenReturn(new int[]{1, 0});
+        Mockito.when(cardRepository.findById(11L)).thenReturn(Optional.of(card(11L, user, active, 5L)));
+        Mockito.when(cardRepository.findById(30L)).thenReturn(Optional.of(card(30L, other, active, 0L)));
+
+        List<TransferResult> results = cardService.transferBatch(List.of(
+                transferDto(10L, 20L, 100L),
+                transferDto(10L, 10L, 100L),
+                transferDto(11L, 20L, 100L),
+                transferDto(12L, 30L, 100L)), "u1");
+
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertEquals(TransferResult.Status.COMPLETED, results.get(0).getStatus());
+        Assertions.assertEquals("Source and destination cards must differ", results.get(1).getError());
+        Assertions.assertEquals("Insufficient balance on source card", results.get(2).getError());
+        Assertions.assertEquals("Access denied: Cards must belong to the user", results.get(3).getError());
+        Mockito.verify(cardRepository).refundAll(List.of(new BalanceChange(12L, 100L)));
+        Mockito.verify(transferRepository).saveAll(Mockito.argThat(transfers -> transfers.spliterator().getExactSizeIfKnown() == 1));
+    }
+
+    @Test
+    void transferBatch_locksAllCardsInIdOrderBeforeUpdates() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debitAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList()))
+                .thenReturn(new int[]{1, 1});
+        Mockito.when(cardRepository.creditAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList()))
+                .thenReturn(new int[]{1, 1});
+
+        // Встречные переводы: без общей блокировки списание 30 и зачисление 10 шли бы в разном порядке
+        cardService.transferBatch(List.of(transferDto(30L, 10L, 100L), transferDto(20L, 30L, 50L)), "u1");
+
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).lockAll(Mockito.argThat(ids -> List.copyOf(ids).equals(List.of(10L, 20L, 30L))));
+        inOrder.verify(cardRepository).debitAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList());
+        inOrder.verify(cardRepository).creditAll(Mockito.eq(1L), Mockito.eq(1L), Mockito.anyList());
+    }
 
+    @Test
+    void getTransferHistory_mergesDirectionsAndReturnsCursor() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        LocalDateTime t0 = LocalDateTime.of(2025, 1, 1, 10, 0);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(card(10L, user, null, 0L)));
+        Mockito.when(transferRepository.findOutgoing(10L, Limit.of(3))).thenReturn(List.of(
+                new TransferResponse(4L, 10L, 20L, 1L, t0.plusMinutes(4)),
+                new TransferResponse(1L, 10L, 20L, 1L, t0.plusMinutes(1))));
+        Mockito.when(transferRepository.findIncoming(10L, Limit.of(3))).thenReturn(List.of(
+                new TransferResponse(3L, 20L, 10L, 1L, t0.plusMinutes(3)),
+                new TransferResponse(2L, 20L, 10L, 1L, t0.plusMinutes(3))));
+
+        TransferHistoryResponse page = cardService.getTransferHistory(10L, null, 2, "u1");
+
+        Assertions.assertEquals(List.of(4L, 3L), page.getItems().stream().map(TransferResponse::getId).toList());
+        Assertions.assertEquals(new TransferCursor(t0.plusMinutes(3), 3L), TransferCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void getTransferHistory_forbidden_forForeignCard() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        user.setRole(User.Role.USER);
+        User other = new User();
+        other.setId(2L);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(card(10L, other, null, 0L)));
+
+        Assertions.assertThrows(SecurityException.class, () -> cardService.getTransferHistory(10L, null, 20, "u1"));
+        Mockito.verifyNoInteractions(transferRepository);
+    }
+
+    @Test
+    void scrollCards_userSeesOwnCardsAfterCursor() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        user.setRole(User.Role.USER);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.scrollViewsByOwner(1L, 5L, Limit.of(3))).thenReturn(List.of(
+                view(6L, "1111"), view(8L, "2222"), view(9L, "3333")));
+
+        CardSliceResponse slice = cardService.scrollCards(null, "someoneElse", new CardCursor(5L).encode(), 2, "u1");
+
+        Assertions.assertEquals(List.of(6L, 8L), slice.getItems().stream().map(CardResponse::getId).toList());
+        Assertions.assertEquals("**** **** **** 2222", slice.getItems().get(1).getCardNumber());
+        Assertions.assertEquals(8L, CardCursor.decode(slice.getNextCursor()).id());
+        Mockito.verify(cardRepository, Mockito.never()).count();
+    }
+
+    @Test
+    void scrollCards_rejectsOversizedPage() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cardService.scrollCards(null, null, null, 101, "u1"));
+    }
+
+    @Test
+    void transfer_withSameIdempotencyKey_appliesOnce() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 100L)).thenReturn(1);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 100L)).thenReturn(1);
+
+        cardService.transfer(transferDto(10L, 20L, 100L), "u1", "key-1");
+        cardService.transfer(transferDto(10L, 20L, 100L), "u1", "key-1");
+
+        Mockito.verify(cardRepository, Mockito.times(1)).debit(10L, 1L, active, 100L);
+        Mockito.verify(idempotencyKeyRepository, Mockito.times(1)).saveAndFlush(Mockito.any());
+        // Второй запрос отвечен из памяти, без чтения таблицы ключей
+        Mockito.verify(idempotencyKeyRepository, Mockito.times(1)).findByUserIdAndKey(1L, "key-1");
+        Assertions.assertEquals(1, transferCount("replayed"));
+    }
+
+    @Test
+    void transfer_withIdempotencyKeyFromTable_skipsTransfer() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        IdempotencyKey stored = new IdempotencyKey();
+        stored.setUserId(1L);
+        stored.setKey("key-1");
+        stored.setFingerprint("10:20:100");
+        stored.setTransferId(77L);
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key-1")).thenReturn(Optional.of(stored));
+
+        cardService.transfer(transferDto(10L, 20L, 100L), "u1", "key-1");
+
+        Mockito.verify(cardRepository, Mockito.never()).debit(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(transferRepository, Mockito.never()).save(Mockito.any());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> cardService.transfer(transferDto(10L, 20L, 500L), "u1", "key-1"));
+    }
+
+    @Test
+    void createCard_fails_whenNumberAlreadyExists() {
+        Card existing = new Card();
+        existing.setId(5L);
+        Mockito.when(cardRepository.findByNumberHash(cardNumberHasher.hash("1234567812345678")))
+                .thenReturn(Optional.of(existing));
+
+        CardDTO dto = new CardDTO();
+        dto.setNumber("1234567812345678");
+        dto.setOwnerId(1L);
+        dto.setExpiration(new Date(System.currentTimeMillis() + 86_400_000L));
+        dto.setBalance(0L);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cardService.createCard(dto));
+        Mockito.verify(cardRepository, Mockito.never()).saveAndFlush(Mockito.any());
+    }
+
+    @Test
+    void createCard_fails_whenNumberIsTakenConcurrently() {
+        User owner = new User();
+        owner.setId(1L);
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(owner));
+        // Проверку прошли оба запроса, второй упёрся в уникальный индекс
+        Mockito.when(cardRepository.saveAndFlush(Mockito.any())).thenThrow(new DataIntegrityViolationException(
+                "could not execute statement", new SQLException("duplicate key value violates unique constraint "
+                        + "\"ux_cards_number_hash\"", "23505")));
+
+        CardDTO dto = new CardDTO();
+        dto.setNumber("1234567812345678");
+        dto.setOwnerId(1L);
+        dto.setExpiration(new Date(System.currentTimeMillis() + 86_400_000L));
+        dto.setBalance(0L);
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> cardService.createCard(dto));
+        Assertions.assertEquals("Card with this number already exists", e.getMessage());
+    }
+
+    @Test
+    void transfer_retriesOnLockConflictThenSucceeds() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        CardStatus active = cardStatusRegistry.get(CardStatus.Code.ACTIVE);
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.debit(10L, 1L, active, 100L))
+                .thenThrow(new PessimisticLockingFailureException("lock timeout"))
+                .thenReturn(1);
+        Mockito.when(cardRepository.credit(20L, 1L, active, 100L)).thenReturn(1);
+
+        cardService.transfer(transferDto(10L, 20L, 100L), "u1");
+
+        Mockito.verify(cardRepository, Mockito.times(2)).debit(10L, 1L, active, 100L);
+        Mockito.verify(transferRepository, Mockito.times(1)).save(Mockito.any());
+    }
+
+    @Test
+    void requestBlock_fails_whenCardNotActive() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("u1");
+        Card card = new Card();
+        card.setId(10L);
+        card.setOwner(user);
+        card.setStatus(cardStatusRegistry.get(CardStatus.Code.BLOCKED));
+
+        Mockito.when(userRepository.findByUsername("u1")).thenReturn(Optional.of(user));
+        Mockito.when(cardRepository.findById(10L)).thenReturn(Optional.of(card));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> cardService.requestBlock(10L, "u1"));
+        Mockito.verify(cardRepository, Mockito.never()).save(Mockito.any());
+    }
+
+    private static CardStatus status(Long id, String name) {
+        CardStatus status = new CardStatus();
+        status.setId(id);
+        status.setName(name);
+        return status;
+    }
+
+    private static TransferDTO transferDto(Long fromId, Long toId, Long amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setFromCardId(fromId);
+        dto.setToCardId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    private static Card card(Long id, User owner, CardStatus status, Long balance) {
+        Card card = new Card();
+        card.setId(id);
+        card.setOwner(owner);
+        card.setStatus(status);
+        card.setBalance(balance);
+        return card;
+    }
+
+    private long transferCount(String outcome) {
+        return meterRegistry.get("card.transfer").tag("outcome", outcome).timer().count();
+    }
+
+    private static CardView view(Long id, String last4) {
+        return new CardView(id, null, last4, 1L, "u1", new Date(), "ACTIVE", 0L);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Переводы на горячую карту через шарды с group commit: отказы отдельных переводов (нехватка средств)
+ * не откатывают соседние в той же групповой транзакции и не роняют её, деньги сохраняются.
+ */
+@SpringBootTest(properties = {"transfer.sharding.enabled=true", "transfer.sharding.shards=2",
+        // Отдельный контекст — отдельная база, общую уже разметил Liquibase другого контекста
+        "spring.datasource.url=jdbc:h2:mem:bankcards-sharded;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;LOCK_TIMEOUT=10000"})
+@ActiveProfiles("test")
+public class CardShardedTransferTest {
+
+    private static final int CLIENTS = 16;
+    private static final int TRANSFERS_PER_CLIENT = 10;
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private TransferShardExecutor transferShardExecutor;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+
+    @Test
+    void hotCardTransfers_groupCommitAndConserveMoney() throws Exception {
+        User user = new User();
+        user.setUsername("sharded-" + System.nanoTime());
+        user.setPassword("hash");
+        user.setRole(User.Role.USER);
+        user = userRepository.save(user);
+        String username = user.getUsername();
+        // Все переводы идут на горячую карту; каждой карте списания хватает ровно на половину своих переводов
+        Long hot = saveCard(user, 0L);
+        List<Long> sources = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            sources.add(saveCard(user, 10L * TRANSFERS_PER_CLIENT / 2));
+        }
+        long transfersBefore = transferRepository.count();
+
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger insufficient = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS_PER_CLIENT; i++) {
+                    TransferDTO dto = new TransferDTO();
+                    dto.setFromCardId(sources.get(client));
+                    dto.setToCardId(hot);
+                    dto.setAmount(10L);
+                    try {
+                        cardService.transfer(dto, username);
+                        succeeded.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        insufficient.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        Assertions.assertEquals(CLIENTS * TRANSFERS_PER_CLIENT / 2, succeeded.get());
+        Assertions.assertEquals(CLIENTS * TRANSFERS_PER_CLIENT / 2, insufficient.get());
+        Assertions.assertEquals(10L * succeeded.get(), cardRepository.findById(hot).orElseThrow().getBalance());
+        cardRepository.findAllById(sources).forEach(card -> Assertions.assertEquals(0L, card.getBalance()));
+        Assertions.assertEquals(succeeded.get(), transferRepository.count() - transfersBefore);
+        Assertions.assertEquals(CLIENTS * TRANSFERS_PER_CLIENT,
+                transferShardExecutor.stats().stream().mapToLong(TransferShardExecutor.ShardStats::completed).sum());
+        // Отказы откатываются до точки сохранения, групповая транзакция при этом не падает
+        Assertions.assertEquals(0L,
+                transferShardExecutor.stats().stream().mapToLong(TransferShardExecutor.ShardStats::fallbacks).sum());
+    }
+
+    private Long saveCard(User owner, Long balance) {
+        Card card = new Card();
+        card.setNumber(cardEncryptor.encrypt(String.format("6%015d", System.nanoTime() % 1_000_000_000_000_000L)));
+        card.setOwner(owner);
+        card.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+        card.setStatus(cardStatusRegistry.get(CardStatus.Code.ACTIVE));
+        card.setBalance(balance);
+        return cardRepository.save(card).getId();
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferHistoryResponse;
+import com.example.bankcards.dto.TransferResult;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Конкурентные переводы между небольшим числом карт в обе стороны, по одному и пакетами:
+ * деньги сохраняются, дедлоков нет. Пишет в лог переводы в секунду для 1, 8 и 64 клиентов.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CardTransferStressTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardTransferStressTest.class);
+
+    private static final int CARDS = 4;
+    private static final long INITIAL_BALANCE = 1_000_000L;
+    private static final int TRANSFERS_PER_LEVEL = 320;
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+
+    private String username;
+    private List<Long> cardIds;
+
+    @BeforeEach
+    void setup() {
+        User user = new User();
+        user.setUsername("stress-" + System.nanoTime());
+        user.setPassword("hash");
+        user.setRole(User.Role.USER);
+        user = userRepository.save(user);
+        username = user.getUsername();
+
+        cardIds = new ArrayList<>();
+        for (int i = 0; i < CARDS; i++) {
+            Card card = new Card();
+            card.setNumber(cardEncryptor.encrypt(String.format("5000%012d", i)));
+            card.setOwner(user);
+            card.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+            card.setStatus(cardStatusRegistry.get(CardStatus.Code.ACTIVE));
+            card.setBalance(INITIAL_BALANCE);
+            cardIds.add(cardRepository.save(card).getId());
+        }
+    }
+
+    @Test
+    void concurrentTransfers_conserveMoney() throws Exception {
+        long transfersBefore = transferRepository.count();
+        int succeeded = 0;
+        for (int clients : new int[]{1, 8, 64}) {
+            succeeded += runLevel(clients);
+        }
+
+        long total = cardRepository.findAllById(cardIds).stream().mapToLong(Card::getBalance).sum();
+        Assertions.assertEquals(CARDS * INITIAL_BALANCE, total);
+        Assertions.assertEquals(succeeded, transferRepository.count() - transfersBefore);
+        cardRepository.findAllById(cardIds).forEach(card -> Assertions.assertTrue(card.getBalance() >= 0));
+    }
+
+    @Test
+    void batchTransfers_conserveMoneyAndReportEachItem() {
+        List<TransferDTO> batch = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < TRANSFERS_PER_LEVEL; i++) {
+            int from = random.nextInt(CARDS);
+            batch.add(transfer(cardIds.get(from), cardIds.get((from + 1) % CARDS), 1L + random.nextInt(100)));
+        }
+        batch.add(transfer(cardIds.get(0), cardIds.get(1), INITIAL_BALANCE * CARDS));
+        long transfersBefore = transferRepository.count();
+
+        long startNanos = System.nanoTime();
+        List<TransferResult> results = cardService.transferBatch(batch, username);
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        logger.info("batch transfers={} throughput={} transfers/s", results.size(), Math.round(results.size() / seconds));
+
+        long completed = results.stream().filter(r -> r.getStatus() == TransferResult.Status.COMPLETED).count();
+        Assertions.assertEquals(TRANSFERS_PER_LEVEL, completed);
+        Assertions.assertEquals(TransferResult.Status.REJECTED, results.get(TRANSFERS_PER_LEVEL).getStatus());
+        Assertions.assertEquals(completed, transferRepository.count() - transfersBefore);
+        long total = cardRepository.findAllById(cardIds).stream().mapToLong(Card::getBalance).sum();
+        Assertions.assertEquals(CARDS * INITIAL_BALANCE, total);
+
+        // История карты постранично: каждая запись ровно один раз
+        Long cardId = cardIds.get(0);
+        Set<Long> seen = new HashSet<>();
+        String cursor = null;
+        do {
+            TransferHistoryResponse page = cardService.getTransferHistory(cardId, cursor, 25, username);
+            page.getItems().forEach(item -> Assertions.assertTrue(seen.add(item.getId())));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        long involving = results.stream()
+                .filter(r -> r.getStatus() == TransferResult.Status.COMPLETED)
+                .map(r -> batch.get(r.getIndex()))
+                .filter(t -> t.getFromCardId().equals(cardId) || t.getToCardId().equals(cardId))
+                .count();
+        Assertions.assertEquals(involving, seen.size());
+    }
+
+    @Test
+    void concurrentReversedBatches_completeWithoutLockConflicts() throws Exception {
+        // Пакеты с встречными переводами: строки карт блокируются одним запросом по возрастанию id
+        List<List<TransferDTO>> batches = List.of(
+                List.of(transfer(cardIds.get(0), cardIds.get(1), 1L), transfer(cardIds.get(2), cardIds.get(3), 1L)),
+                List.of(transfer(cardIds.get(3), cardIds.get(2), 1L), transfer(cardIds.get(1), cardIds.get(0), 1L)));
+        int rounds = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(batches.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (List<TransferDTO> batch : batches) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                long completed = 0;
+                for (int i = 0; i < rounds; i++) {
+                    completed += cardService.transferBatch(batch, username).stream()
+                            .filter(r -> r.getStatus() == TransferResult.Status.COMPLETED)
+                            .count();
+                }
+                return completed;
+            }));
+        }
+        start.countDown();
+        long completed = 0;
+        for (Future<Long> future : futures) {
+            completed += future.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        Assertions.assertEquals(batches.size() * rounds * 2L, completed);
+        long total = cardRepository.findAllById(cardIds).stream().mapToLong(Card::getBalance).sum();
+        Assertions.assertEquals(CARDS * INITIAL_BALANCE, total);
+    }
+
+    @Test
+    void concurrentRetriesWithSameIdempotencyKey_applyOnce() throws Exception {
+        long transfersBefore = transferRepository.count();
+        long balanceBefore = cardRepository.findById(cardIds.get(0)).orElseThrow().getBalance();
+        int clients = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                cardService.transfer(transfer(cardIds.get(0), cardIds.get(1), 10L), username, "retry-" + username);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        Assertions.assertEquals(1, transferRepository.count() - transfersBefore);
+        Assertions.assertEquals(balanceBefore - 10L, cardRepository.findById(cardIds.get(0)).orElseThrow().getBalance());
+    }
+
+    private static TransferDTO transfer(Long fromId, Long toId, Long amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setFromCardId(fromId);
+        dto.setToCardId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    private int runLevel(int clients) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int perClient = TRANSFERS_PER_LEVEL / clients;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perClient; i++) {
+                    int from = random.nextInt(CARDS);
+                    int to = (from + 1 + random.nextInt(CARDS - 1)) % CARDS;
+                    TransferDTO dto = new TransferDTO();
+                    dto.setFromCardId(cardIds.get(from));
+                    dto.setToCardId(cardIds.get(to));
+                    dto.setAmount(1L + random.nextInt(100));
+                    try {
+                        cardService.transfer(dto, username);
+                        succeeded.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        pool.shutdown();
+
+        logger.info("clients={} transfers={} failed={} throughput={} transfers/s",
+                clients, succeeded.get(), failed.get(), Math.round(succeeded.get() / seconds));
+        return succeeded.get();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardEncryptor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Выгрузка на H2: номера маскируются (в том числе у карт без number_last4), баланс включает слоты,
+ * CSV экранирует поля, NDJSON — по объекту на строку.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class ExportServiceTest {
+
+    @Autowired
+    private ExportService exportService;
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardStatusRegistry cardStatusRegistry;
+    @Autowired
+    private CardEncryptor cardEncryptor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private User owner;
+    private String number;
+    private Long cardId;
+    private Long legacyCardId;
+
+    @BeforeEach
+    void setup() {
+        long suffix = System.nanoTime();
+        owner = new User();
+        owner.setUsername("export, \"user\" " + suffix);
+        owner.setPassword("hash");
+        owner.setRole(User.Role.USER);
+        owner = userRepository.save(owner);
+
+        number = String.format("6%015d", suffix % 1_000_000_000_000_000L);
+        cardId = saveCard(number, number.substring(12), 1_000L);
+        legacyCardId = saveCard(String.format("7%015d", suffix % 1_000_000_000_000_000L), null, 300L);
+    }
+
+    @Test
+    void cardsNdjson_masksNumbersAndIncludesSlotBalance() throws Exception {
+        cardService.setBalanceSlots(cardId, 2);
+        cardService.transfer(transferDto(legacyCardId, cardId, 300L), owner.getUsername());
+
+        List<JsonNode> rows = ndjson(out -> exportService.exportCards(ExportService.Format.NDJSON, out));
+
+        JsonNode card = row(rows, cardId);
+        Assertions.assertEquals("**** **** **** " + number.substring(12), card.get("cardNumber").asText());
+        Assertions.assertEquals(owner.getUsername(), card.get("owner").asText());
+        Assertions.assertEquals("ACTIVE", card.get("status").asText());
+        Assertions.assertEquals(1_300L, card.get("balance").asLong());
+        Assertions.assertTrue(row(rows, legacyCardId).get("cardNumber").asText().startsWith("**** **** **** "));
+    }
+
+    @Test
+    void cardsCsv_hasHeaderAndQuotesFields() throws Exception {
+        String csv = export(out -> exportService.exportCards(ExportService.Format.CSV, out));
+
+        Assertions.assertTrue(csv.startsWith("id,cardNumber,owner,expiryDate,status,balance\n"));
+        String quotedOwner = "\"" + owner.getUsername().replace("\"", "\"\"") + "\"";
+        Assertions.assertTrue(csv.contains("\n" + cardId + ",**** **** **** " + number.substring(12) + "," + quotedOwner + ","));
+        Assertions.assertFalse(csv.contains(number));
+    }
+
+    @Test
+    void transfersNdjson_streamsAllTransfers() throws Exception {
+        cardService.transfer(transferDto(cardId, legacyCardId, 250L), owner.getUsername());
+
+        List<JsonNode> rows = ndjson(out -> exportService.exportTransfers(ExportService.Format.NDJSON, out));
+
+        Assertions.assertTrue(rows.stream().anyMatch(r -> r.get("fromCardId").asLong() == cardId
+                && r.get("toCardId").asLong() == legacyCardId && r.get("amount").asLong() == 250L));
+    }
+
+    @FunctionalInterface
+    private interface Export {
+        void to(ByteArrayOutputStream out) throws Exception;
+    }
+
+    private String export(Export export) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.to(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<JsonNode> ndjson(Export export) throws Exception {
+        String body = export(export);
+        Assertions.assertTrue(body.endsWith("\n"));
+        return body.lines().map(line -> {
+            try {
+                return objectMapper.readTree(line);
+            } catch (Exception e) {
+                throw new AssertionError("Not a JSON line: " + line, e);
+            }
+        }).toList();
+    }
+
+    private static JsonNode row(List<JsonNode> rows, Long id) {
+        return rows.stream().filter(r -> r.get("id").asLong() == id).findFirst()
+                .orElseThrow(() -> new AssertionError("No row for card " + id));
+    }
+
+    private Long saveCard(String cardNumber, String lastFour, Long balance) {
+        Card card = new Card();
+        card.setNumber(cardEncryptor.encrypt(cardNumber));
+        card.setNumberLast4(lastFour);
+        card.setOwner(owner);
+        card.setExpiration(new Date(System.currentTimeMillis() + 365L * 86_400_000L));
+        card.setStatus(cardStatusRegistry.get(CardStatus.Code.ACTIVE));
+        card.setBalance(balance);
+        return cardRepository.save(card).getId();
+    }
+
+    private static TransferDTO transferDto(Long fromId, Long toId, Long amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setFromCardId(fromId);
+        dto.setToCardId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+public class IdempotencyKeyStoreTest {
+
+    private final IdempotencyKeyRepository repository = Mockito.mock(IdempotencyKeyRepository.class);
+    private final IdempotencyKeyStore store = new IdempotencyKeyStore(repository,
+            Mockito.mock(PlatformTransactionManager.class), 60_000L, 100L, 2);
+
+    @Test
+    void record_thenRecall_fromMemory() {
+        store.record(1L, "k", "10:20:5", 99L);
+
+        Assertions.assertEquals(99L, store.recall(1L, "k", "10:20:5").orElseThrow().transferId());
+        Assertions.assertEquals(Optional.empty(), store.recall(2L, "k", "10:20:5"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.recall(1L, "k", "10:20:6"));
+    }
+
+    @Test
+    void record_concurrentDuplicate_isRetryable() {
+        Mockito.when(repository.saveAndFlush(Mockito.any())).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        Assertions.assertThrows(ConcurrencyFailureException.class, () -> store.record(1L, "k", "10:20:5", 99L));
+        Assertions.assertEquals(Optional.empty(), store.recall(1L, "k", "10:20:5"));
+    }
+
+    @Test
+    void purgeExpired_deletesInBatchesUntilShortBatch() {
+        Mockito.when(repository.deleteOlderThan(Mockito.any(), Mockito.eq(2))).thenReturn(2, 2, 1);
+
+        store.purgeExpired();
+
+        Mockito.verify(repository, Mockito.times(3)).deleteOlderThan(Mockito.any(), Mockito.eq(2));
+    }
+
+    @Test
+    void validate_rejectsBlankAndOversizedKeys() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IdempotencyKeyStore.validate(" "));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IdempotencyKeyStore.validate("x".repeat(256)));
+    }
+}
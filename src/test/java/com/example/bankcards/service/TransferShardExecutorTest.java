@@ -0,0 +1,129 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransferShardExecutorTest {
+
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TransferShardExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void execute_returnsResultAndIsolatesItemFailures() {
+        executor = new TransferShardExecutor(transactionManager, meterRegistry, true, 2, 10, 10);
+
+        Assertions.assertEquals(1L, executor.execute(3L, 7L, () -> 1L, () -> -1L));
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> executor.execute(3L, 7L, () -> { throw new IllegalStateException("Insufficient balance"); }, () -> -1L));
+        Assertions.assertEquals("Insufficient balance", e.getMessage());
+        Assertions.assertEquals(2L, executor.stats().stream().mapToLong(TransferShardExecutor.ShardStats::completed).sum());
+        Assertions.assertEquals(2L, meterRegistry.get("transfer.shard.latency").timers().stream().mapToLong(Timer::count).sum());
+    }
+
+    @Test
+    void execute_fallsBackToStandaloneWhenGroupFails() {
+        executor = new TransferShardExecutor(transactionManager, meterRegistry, true, 1, 10, 10);
+        AtomicInteger aloneCalls = new AtomicInteger();
+
+        Long result = executor.execute(3L, 1L,
+                () -> { throw new PessimisticLockingFailureException("deadlock"); },
+                () -> { aloneCalls.incrementAndGet(); return 42L; });
+
+        Assertions.assertEquals(42L, result);
+        Assertions.assertEquals(1, aloneCalls.get());
+        Assertions.assertEquals(1L, executor.stats().get(0).fallbacks());
+    }
+
+    @Test
+    void execute_locksGroupCardsAndRunsItInDestinationOrder() throws Exception {
+        executor = new TransferShardExecutor(transactionManager, meterRegistry, true, 1, 10, 10);
+        List<List<Long>> locks = new CopyOnWriteArrayList<>();
+        executor.setGroupLock((fromCardIds, toCardIds) -> {
+            locks.add(fromCardIds);
+            locks.add(toCardIds);
+        });
+        List<Long> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Long> blocking = CompletableFuture.supplyAsync(() -> executor.execute(1L, 100L, () -> {
+            running.countDown();
+            await(release);
+            return 100L;
+        }, () -> 100L));
+        Assertions.assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> executor.execute(5L, 9L, () -> {
+            applied.add(9L);
+            return 9L;
+        }, () -> 9L));
+        while (executor.stats().get(0).queueDepth() < 1) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> executor.execute(3L, 2L, () -> {
+            applied.add(2L);
+            return 2L;
+        }, () -> 2L));
+        while (executor.stats().get(0).queueDepth() < 2) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        Assertions.assertEquals(List.of(100L, 9L, 2L),
+                List.of(blocking.get(5, TimeUnit.SECONDS), first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS)));
+        Assertions.assertEquals(List.of(2L, 9L), applied);
+        Assertions.assertEquals(List.of(List.of(1L), List.of(100L), List.of(3L, 5L), List.of(2L, 9L)), locks);
+    }
+
+    @Test
+    void execute_rejectsWith429WhenQueueIsFull() throws Exception {
+        executor = new TransferShardExecutor(transactionManager, meterRegistry, true, 1, 1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Long> blocking = CompletableFuture.supplyAsync(() -> executor.execute(3L, 1L, () -> {
+            running.countDown();
+            await(release);
+            return 1L;
+        }, () -> 1L));
+        Assertions.assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> queued = CompletableFuture.supplyAsync(() -> executor.execute(3L, 1L, () -> 2L, () -> 2L));
+        while (executor.stats().get(0).queueDepth() == 0) {
+            Thread.onSpinWait();
+        }
+
+        Assertions.assertThrows(TooManyRequestsException.class, () -> executor.execute(3L, 1L, () -> 3L, () -> 3L));
+        release.countDown();
+        Assertions.assertEquals(List.of(1L, 2L), List.of(blocking.get(5, TimeUnit.SECONDS), queued.get(5, TimeUnit.SECONDS)));
+        Assertions.assertEquals(1L, executor.stats().get(0).rejected());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
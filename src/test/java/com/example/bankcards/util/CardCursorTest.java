@@ -0,0 +1,19 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CardCursorTest {
+
+    @Test
+    void encode_decode_roundTrip() {
+        Assertions.assertEquals(new CardCursor(123L), CardCursor.decode(new CardCursor(123L).encode()));
+    }
+
+    @Test
+    void decode_rejectsForeignTokens() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CardCursor.decode("%%%"));
+        String transferCursor = new TransferCursor(java.time.LocalDateTime.now(), 1L).encode();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CardCursor.decode(transferCursor));
+    }
+}
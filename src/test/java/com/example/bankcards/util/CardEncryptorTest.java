@@ -3,6 +3,18 @@ package com.example.bankcards.util;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class CardEncryptorTest {
 
     @Test
@@ -16,6 +28,55 @@ public class CardEncryptorTest {
         String masked = enc.maskCardNumber(encrypted);
         Assertions.assertEquals("**** **** **** 5678", masked);
     }
-}
 
+    @Test
+    void decrypt_readsCiphertextInOriginalFormat() throws Exception {
+        CardEncryptor enc = new CardEncryptor("1234567890ABCDEF");
+        byte[] iv = new byte[12];
+        iv[0] = 7;
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec("1234567890ABCDEF".getBytes(StandardCharsets.UTF_8), "AES"),
+                new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal("1234567812345678".getBytes(StandardCharsets.UTF_8));
+        byte[] encryptedWithIv = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, encryptedWithIv, 0, iv.length);
+        System.arraycopy(encrypted, 0, encryptedWithIv, iv.length, encrypted.length);
+
+        Assertions.assertEquals("1234567812345678", enc.decrypt(Base64.getEncoder().encodeToString(encryptedWithIv)));
+    }
+
+    @Test
+    void byteArray_and_byteBuffer_roundTrip() {
+        CardEncryptor enc = new CardEncryptor("1234567890ABCDEF");
+        byte[] num = "1234567812345678".getBytes(StandardCharsets.UTF_8);
+
+        byte[] encrypted = enc.encrypt(num);
+        Assertions.assertEquals(CardEncryptor.encryptedLength(num.length), encrypted.length);
+        Assertions.assertArrayEquals(num, enc.decrypt(encrypted));
+
+        ByteBuffer out = ByteBuffer.allocate(CardEncryptor.encryptedLength(num.length));
+        enc.encrypt(ByteBuffer.wrap(num), out);
+        out.flip();
+        ByteBuffer plain = ByteBuffer.allocate(num.length);
+        enc.decrypt(out, plain);
+        Assertions.assertArrayEquals(num, plain.array());
+        Assertions.assertArrayEquals(num, enc.decrypt(Base64.getDecoder().decode(enc.encrypt("1234567812345678"))));
+    }
 
+    @Test
+    void concurrentVirtualThreads_shareCipherPool() throws Exception {
+        CardEncryptor enc = new CardEncryptor("1234567890ABCDEF");
+        List<Future<String>> results = new ArrayList<>();
+        // Каждая задача — новый виртуальный поток, как запрос при spring.threads.virtual.enabled
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                String num = String.format("4000%012d", i);
+                results.add(executor.submit(() -> enc.decrypt(enc.encrypt(num))));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assertions.assertEquals(String.format("4000%012d", i), results.get(i).get());
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CardNumberHasherTest {
+
+    @Test
+    void hash_isDeterministicAndKeyed() {
+        CardNumberHasher hasher = new CardNumberHasher("testIndexKey0123456789");
+        String num = "1234567812345678";
+        String hash = hasher.hash(num);
+        Assertions.assertEquals(64, hash.length());
+        Assertions.assertEquals(hash, hasher.hash(num));
+        Assertions.assertNotEquals(hash, hasher.hash("8765432187654321"));
+        Assertions.assertNotEquals(hash, new CardNumberHasher("anotherIndexKey0123456").hash(num));
+    }
+}
+
+
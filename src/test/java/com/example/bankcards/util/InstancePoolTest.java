@@ -0,0 +1,40 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InstancePoolTest {
+
+    @Test
+    void borrow_reusesReleasedInstances_andCreatesWhenEmpty() {
+        AtomicInteger created = new AtomicInteger();
+        InstancePool<Object> pool = new InstancePool<>(2, () -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+
+        Object first = pool.borrow();
+        pool.release(first);
+        Assertions.assertSame(first, pool.borrow());
+
+        Object second = pool.borrow();
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(2, created.get());
+    }
+
+    @Test
+    void release_dropsInstancesBeyondCapacity() {
+        InstancePool<Object> pool = new InstancePool<>(2, Object::new);
+        Object a = pool.borrow();
+        Object b = pool.borrow();
+        Object c = pool.borrow();
+
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        Assertions.assertEquals(2, pool.idle());
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+public class TransferCursorTest {
+
+    @Test
+    void encode_decode_roundTrip() {
+        TransferCursor cursor = new TransferCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123456000), 42L);
+        Assertions.assertEquals(cursor, TransferCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decode_rejectsGarbage() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode("not a cursor"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode("MjAyNS0wMy0wMQ"));
+    }
+}